@@ -0,0 +1,191 @@
+package bms;
+
+import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.sensors.Sensor;
+import bms.util.TimedItemManager;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Entry point which runs a simulation of the buildings in a save file
+ * without the GUI, for use on machines without a display.
+ * <p>
+ * Time is elapsed through the {@link TimedItemManager}, either at a fixed
+ * number of simulated minutes per real second, or as fast as possible. A
+ * snapshot of the state of every room is appended to a file at regular
+ * intervals of simulated time:
+ * <pre>
+ * &#64;minute:minutesElapsed
+ * &#64;building:buildingIndex
+ * floorNumber:roomNumber:roomState:reading,reading,...
+ * </pre>
+ * with one line for each room of each building, listing the current reading
+ * of each of the room's sensors in order. The snapshot file is replaced when
+ * the simulation starts.
+ */
+public class HeadlessLauncher {
+
+    /**
+     * Number of simulated minutes between snapshots, if not given.
+     */
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 60;
+
+    /**
+     * Entry point to the headless simulation.
+     * <p>
+     * Command line arguments:
+     * filename snapshotFile [--minutes N] [--rate R] [--every N]
+     * <p>
+     * where <code>filename</code> is the path of the file containing the
+     * buildings to simulate, <code>snapshotFile</code> is the path of the
+     * file to write snapshots to, <code>--minutes</code> is the number of
+     * minutes to simulate (by default, until the process is stopped),
+     * <code>--rate</code> is the number of minutes to simulate per second
+     * (by default, as fast as possible) and <code>--every</code> is the
+     * number of minutes between snapshots (by default, 60).
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length % 2 != 0) {
+            usage();
+        }
+        String filename = args[0];
+        String snapshotFile = args[1];
+        long minutes = Long.MAX_VALUE;
+        double rate = 0;
+        long interval = DEFAULT_SNAPSHOT_INTERVAL;
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--minutes" -> minutes = Long.parseLong(args[i + 1]);
+                    case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                    case "--every" -> interval = Long.parseLong(args[i + 1]);
+                    default -> usage();
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (minutes < 0 || !(rate >= 0) || Double.isInfinite(rate)
+                || interval <= 0) {
+            usage();
+        }
+
+        List<Building> buildings;
+        try {
+            buildings = BuildingInitialiser.loadBuildingsParallel(filename);
+        } catch (IOException | FileFormatException e) {
+            System.err.println("Error loading from file \"" + filename
+                    + "\". Stack trace below:");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        TimedItemManager.getInstance().setTickPool(ForkJoinPool.commonPool());
+        try (Writer out = Files.newBufferedWriter(Paths.get(snapshotFile),
+                StandardCharsets.UTF_8)) {
+            run(buildings, out, minutes, rate, interval);
+        } catch (IOException e) {
+            System.err.println("Error writing to file \"" + snapshotFile
+                    + "\". Stack trace below:");
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Simulates the given number of minutes, writing a snapshot at the start
+     * and after every interval, and after the last minute.
+     * <p>
+     * At a rate of zero, the minutes between snapshots are elapsed in bulk
+     * with {@link TimedItemManager#fastForward(long)}. Otherwise, each minute
+     * is elapsed when it is due, so a slow tick delays the following minutes
+     * rather than being skipped.
+     */
+    private static void run(List<Building> buildings, Writer out,
+            long minutes, double rate, long interval)
+            throws IOException, InterruptedException {
+        TimedItemManager manager = TimedItemManager.getInstance();
+        long start = System.nanoTime();
+        long elapsed = 0;
+        writeSnapshot(buildings, out);
+        while (elapsed < minutes) {
+            long step = Math.min(interval, minutes - elapsed);
+            if (rate == 0) {
+                manager.fastForward(step);
+                elapsed += step;
+            } else {
+                for (long i = 0; i < step; i++) {
+                    long due = start + (long) ((elapsed + 1) * 1e9 / rate);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000,
+                                (int) (wait % 1_000_000));
+                    }
+                    manager.elapseOneMinute();
+                    elapsed++;
+                }
+            }
+            writeSnapshot(buildings, out);
+        }
+    }
+
+    /**
+     * Appends a snapshot of the state of every room of the given buildings to
+     * the given output, and flushes it so that the snapshot can be read
+     * while the simulation continues.
+     */
+    private static void writeSnapshot(List<Building> buildings, Writer out)
+            throws IOException {
+        String newline = System.lineSeparator();
+        out.write("@minute:" + TimedItemManager.getInstance()
+                .getMinutesElapsed() + newline);
+        for (int i = 0; i < buildings.size(); i++) {
+            out.write("@building:" + i + newline);
+            for (Floor floor : buildings.get(i).getFloors()) {
+                for (Room room : floor.getRooms()) {
+                    out.write(floor.getFloorNumber() + ":"
+                            + room.getRoomNumber() + ":"
+                            + room.evaluateRoomState() + ":");
+                    List<Sensor> sensors = room.getSensors();
+                    for (int j = 0; j < sensors.size(); j++) {
+                        if (j > 0) {
+                            out.write(',');
+                        }
+                        out.write(String.valueOf(
+                                sensors.get(j).getCurrentReading()));
+                    }
+                    out.write(newline);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the command line usage and exits.
+     */
+    private static void usage() {
+        System.out.println("Usage: filename snapshotFile [--minutes N]"
+                + " [--rate minutesPerSecond] [--every N]");
+        System.out.println("Simulates the buildings in filename without the"
+                + " GUI, appending a snapshot of every room to snapshotFile"
+                + " every N simulated minutes. Without --rate, minutes are"
+                + " simulated as fast as possible.");
+        System.exit(1);
+    }
+}
@@ -4,12 +4,14 @@ import bms.building.BuildingInitialiser;
 import bms.display.View;
 import bms.display.ViewModel;
 import bms.exceptions.FileFormatException;
+import bms.util.TimedItemManager;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main entry point for the CSSE2002/7023 Building Management System.
@@ -50,10 +52,15 @@ public class Launcher extends Application {
     public void start(Stage stage) {
         List<String> params = getParameters().getRaw();
 
+        // The view model holds every building in use, so anything it no
+        // longer refers to stops being elapsed once garbage collected, even
+        // if it was never deregistered
+        TimedItemManager.getInstance().setWeakRegistration(true);
+
         View view;
         try {
             view = new View(stage, new ViewModel(
-                    BuildingInitialiser.loadBuildings(params.get(0))));
+                    BuildingInitialiser.loadBuildingsLazy(params.get(0))));
         } catch (IOException | FileFormatException e) {
             System.err.println("Error loading from file \"" + params.get(0)
                     + "\". Stack trace below:");
@@ -63,6 +70,8 @@ public class Launcher extends Application {
             return;
         }
 
+        // Large buildings are ticked in parallel, so a tick fits in a frame
+        TimedItemManager.getInstance().setTickPool(ForkJoinPool.commonPool());
         view.run();
     }
 }
@@ -0,0 +1,533 @@
+package bms.building;
+
+import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.DuplicateSensorException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.FloorTooSmallException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.exceptions.NoFloorBelowException;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.CarbonDioxideSensor;
+import bms.sensors.HazardSensor;
+import bms.sensors.NoiseSensor;
+import bms.sensors.OccupancySensor;
+import bms.sensors.Sensor;
+import bms.sensors.TemperatureSensor;
+import bms.sensors.TimedSensor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the compact binary save file format.
+ * <p>
+ * The binary format holds the same buildings as the text format read by
+ * {@link SaveFileParser}, but without any delimiters or decimal digits:
+ * <pre>
+ * file:     'B' 'M' 'S' 'B' version numBuildings building*
+ * building: name numFloors floor*
+ * floor:    floorNumber width length numRooms room*
+ *           numMaintenanceRooms roomNumber*
+ * room:     roomNumber roomType area numSensors hazardEvaluator sensor*
+ * sensor:   sensorKind numReadings reading* field* [weighting]
+ * </pre>
+ * Counts, readings and other integers are written as variable-length
+ * integers, seven bits per byte, with signed values zig-zag encoded. Widths,
+ * lengths and areas are written as 8-byte doubles, and names as a byte count
+ * followed by UTF-8 bytes. Room types, sensor kinds and hazard evaluators are
+ * written as single-byte ordinals.
+ */
+final class BinarySaveFormat {
+
+    /**
+     * Bytes at the start of every binary save file.
+     */
+    private static final byte[] MAGIC = {'B', 'M', 'S', 'B'};
+
+    /**
+     * Version of the format written by this class.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Kinds of sensor which may appear in a binary save file, written as
+     * their ordinals.
+     */
+    private enum SensorKind {
+        CARBON_DIOXIDE, NOISE, OCCUPANCY, TEMPERATURE;
+
+        /**
+         * Returns the kind of the given sensor.
+         */
+        private static SensorKind of(Sensor sensor) {
+            if (sensor instanceof CarbonDioxideSensor) {
+                return CARBON_DIOXIDE;
+            } else if (sensor instanceof NoiseSensor) {
+                return NOISE;
+            } else if (sensor instanceof OccupancySensor) {
+                return OCCUPANCY;
+            } else if (sensor instanceof TemperatureSensor) {
+                return TEMPERATURE;
+            }
+            throw new IllegalArgumentException("Cannot save sensor of type "
+                    + sensor.getClass().getSimpleName());
+        }
+    }
+
+    private BinarySaveFormat() {
+    }
+
+    /**
+     * Returns whether the file at the given path starts with the binary save
+     * file header.
+     *
+     * @param path path of file to check
+     * @return true if the file is a binary save file
+     * @throws IOException if an IOException is encountered when reading
+     */
+    static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Writes the given buildings in the binary format.
+     *
+     * @param buildings snapshots of the buildings to write
+     * @param out stream to write to; should be buffered
+     * @throws IOException if an IOException is encountered when writing
+     */
+    static void write(List<BuildingSnapshot> buildings, OutputStream out)
+            throws IOException {
+        Output output = new Output(out);
+        out.write(MAGIC);
+        output.writeByte(VERSION);
+        output.writeUnsigned(buildings.size());
+        for (BuildingSnapshot building : buildings) {
+            building.writeBinary(output);
+        }
+    }
+
+    /**
+     * Writes a sensor record, not including any weighting.
+     *
+     * @param out output to write to
+     * @param sensor sensor to write
+     * @throws IOException if an IOException is encountered when writing
+     */
+    static void writeSensor(Output out, Sensor sensor) throws IOException {
+        SensorKind kind = SensorKind.of(sensor);
+        out.writeByte(kind.ordinal());
+        int[] readings = ((TimedSensor) sensor).getSensorReadings();
+        out.writeUnsigned(readings.length);
+        for (int reading : readings) {
+            out.writeUnsigned(reading);
+        }
+        switch (kind) {
+            case CARBON_DIOXIDE:
+                CarbonDioxideSensor co2Sensor = (CarbonDioxideSensor) sensor;
+                out.writeUnsigned(co2Sensor.getUpdateFrequency());
+                out.writeSigned(co2Sensor.getIdealValue());
+                out.writeSigned(co2Sensor.getVariationLimit());
+                break;
+            case NOISE:
+                out.writeUnsigned(((NoiseSensor) sensor).getUpdateFrequency());
+                break;
+            case OCCUPANCY:
+                OccupancySensor occupancySensor = (OccupancySensor) sensor;
+                out.writeUnsigned(occupancySensor.getUpdateFrequency());
+                out.writeSigned(occupancySensor.getCapacity());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the code written for a room's hazard evaluator.
+     *
+     * @param hazardEvaluator encoded hazard evaluator type, or null if the
+     *                        room has none
+     * @return 0 if the room has no evaluator, otherwise one more than the
+     * index of its type in {@link SaveFileParser#EVALUATOR_TYPES}
+     */
+    static int evaluatorCode(String hazardEvaluator) {
+        return hazardEvaluator == null
+                ? 0
+                : Arrays.asList(SaveFileParser.EVALUATOR_TYPES)
+                        .indexOf(hazardEvaluator) + 1;
+    }
+
+    /**
+     * Reads every building in a binary save file.
+     *
+     * @param in stream to read from, positioned at the start of the file;
+     *           should be buffered
+     * @param length length of the file in bytes
+     * @return list of buildings in the order they appear in the file
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    static List<Building> read(InputStream in, long length)
+            throws IOException, FileFormatException {
+        Input input = new Input(in, length);
+        for (byte b : MAGIC) {
+            if (input.readByte() != b) {
+                throw input.error("Not a binary save file");
+            }
+        }
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw input.error("Unsupported binary save file version "
+                    + version);
+        }
+
+        int numBuildings = input.readCount();
+        List<Building> buildings = new ArrayList<>(numBuildings);
+        try {
+            for (int i = 0; i < numBuildings; i++) {
+                buildings.add(readBuilding(input));
+            }
+            if (input.remaining() > 0) {
+                throw input.error("Unexpected data after last building");
+            }
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardBuildings(buildings);
+            throw e;
+        }
+        return buildings;
+    }
+
+    /**
+     * Reads a building with all of its floors, rooms and sensors.
+     */
+    private static Building readBuilding(Input input)
+            throws IOException, FileFormatException {
+        String name = input.readString();
+        if (name.isBlank()) {
+            throw input.error("Building name must not be blank");
+        }
+        Building building = new Building(name);
+        try {
+            int numFloors = input.readCount();
+            for (int i = 0; i < numFloors; i++) {
+                long floorOffset = input.offset();
+                Floor floor = readFloor(input);
+                try {
+                    building.addFloor(floor);
+                } catch (IllegalArgumentException | DuplicateFloorException
+                        | NoFloorBelowException | FloorTooSmallException e) {
+                    BuildingInitialiser.discardFloor(floor);
+                    throw input.error(floorOffset, e.getMessage(), e);
+                }
+            }
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardBuildings(List.of(building));
+            throw e;
+        }
+        return building;
+    }
+
+    /**
+     * Reads a floor with all of its rooms and its maintenance schedule.
+     */
+    private static Floor readFloor(Input input)
+            throws IOException, FileFormatException {
+        int floorNumber = input.readSigned();
+        double width = input.readDouble();
+        double length = input.readDouble();
+        Floor floor = new Floor(floorNumber, width, length);
+        try {
+            readRoomsAndSchedule(input, floor);
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardFloor(floor);
+            throw e;
+        }
+        return floor;
+    }
+
+    /**
+     * Reads the rooms of a floor, and creates its maintenance schedule if it
+     * has one.
+     */
+    private static void readRoomsAndSchedule(Input input, Floor floor)
+            throws IOException, FileFormatException {
+        int numRooms = input.readCount();
+        for (int i = 0; i < numRooms; i++) {
+            readRoom(input, floor);
+        }
+
+        long scheduleOffset = input.offset();
+        int numMaintenanceRooms = input.readCount();
+        if (numMaintenanceRooms > 0) {
+            List<Room> roomOrder = new ArrayList<>(numMaintenanceRooms);
+            for (int i = 0; i < numMaintenanceRooms; i++) {
+                int roomNumber = input.readSigned();
+                Room room = floor.getRoomByNumber(roomNumber);
+                if (room == null) {
+                    throw input.error(scheduleOffset, "Maintenance schedule "
+                            + "refers to room " + roomNumber + " which is not "
+                            + "on floor " + floor.getFloorNumber(), null);
+                }
+                roomOrder.add(room);
+            }
+            try {
+                floor.createMaintenanceSchedule(roomOrder);
+            } catch (IllegalArgumentException e) {
+                throw input.error(scheduleOffset, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads a room with all of its sensors, and adds it to the given floor.
+     */
+    private static void readRoom(Input input, Floor floor)
+            throws IOException, FileFormatException {
+        long roomOffset = input.offset();
+        int roomNumber = input.readSigned();
+        int typeOrdinal = input.readByte();
+        RoomType[] roomTypes = RoomType.values();
+        if (typeOrdinal >= roomTypes.length) {
+            throw input.error("Unknown room type " + typeOrdinal);
+        }
+        double area = input.readDouble();
+        int numSensors = input.readCount();
+        int evaluatorCode = input.readByte();
+        if (evaluatorCode > SaveFileParser.EVALUATOR_TYPES.length) {
+            throw input.error("Unknown hazard evaluator " + evaluatorCode);
+        }
+
+        Room room = new Room(roomNumber, roomTypes[typeOrdinal], area);
+        try {
+            floor.addRoom(room);
+        } catch (IllegalArgumentException | DuplicateRoomException
+                | InsufficientSpaceException e) {
+            throw input.error(roomOffset, e.getMessage(), e);
+        }
+
+        int evaluatorType = evaluatorCode - 1;
+        boolean weighted = evaluatorType == 1;
+        Map<HazardSensor, Integer> weightings = new LinkedHashMap<>();
+        for (int i = 0; i < numSensors; i++) {
+            long sensorOffset = input.offset();
+            Sensor sensor = readSensor(input);
+            try {
+                room.addSensor(sensor);
+            } catch (DuplicateSensorException e) {
+                BuildingInitialiser.discardSensor(sensor);
+                throw input.error(sensorOffset, e.getMessage(), e);
+            }
+            if (weighted) {
+                weightings.put((HazardSensor) sensor, input.readSigned());
+            }
+        }
+
+        try {
+            room.setHazardEvaluator(SaveFileParser.createHazardEvaluator(
+                    evaluatorType, room, weightings));
+        } catch (IllegalArgumentException e) {
+            throw input.error(roomOffset, "Sensor weightings must each be "
+                    + "between 0 and 100 and sum to 100", e);
+        }
+    }
+
+    /**
+     * Reads a sensor, not including any weighting.
+     */
+    private static Sensor readSensor(Input input)
+            throws IOException, FileFormatException {
+        long sensorOffset = input.offset();
+        int kindOrdinal = input.readByte();
+        SensorKind[] kinds = SensorKind.values();
+        if (kindOrdinal >= kinds.length) {
+            throw input.error("Unknown sensor kind " + kindOrdinal);
+        }
+        int[] readings = new int[input.readCount()];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = input.readUnsigned();
+        }
+
+        try {
+            switch (kinds[kindOrdinal]) {
+                case CARBON_DIOXIDE:
+                    int co2Frequency = input.readUnsigned();
+                    int idealValue = input.readSigned();
+                    int variationLimit = input.readSigned();
+                    return new CarbonDioxideSensor(readings, co2Frequency,
+                            idealValue, variationLimit);
+                case NOISE:
+                    return new NoiseSensor(readings, input.readUnsigned());
+                case OCCUPANCY:
+                    int occupancyFrequency = input.readUnsigned();
+                    int capacity = input.readSigned();
+                    return new OccupancySensor(readings, occupancyFrequency,
+                            capacity);
+                default:
+                    return new TemperatureSensor(readings);
+            }
+        } catch (IllegalArgumentException e) {
+            throw input.error(sensorOffset, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the primitive values of the binary format to a stream.
+     */
+    static final class Output {
+        private final OutputStream out;
+
+        private Output(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes a single byte.
+         */
+        void writeByte(int value) throws IOException {
+            this.out.write(value);
+        }
+
+        /**
+         * Writes an integer as an unsigned variable-length integer.
+         */
+        void writeUnsigned(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                this.out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.out.write(value);
+        }
+
+        /**
+         * Writes an integer as a zig-zag encoded variable-length integer.
+         */
+        void writeSigned(int value) throws IOException {
+            writeUnsigned((value << 1) ^ (value >> 31));
+        }
+
+        /**
+         * Writes a double as its 8-byte IEEE 754 representation.
+         */
+        void writeDouble(double value) throws IOException {
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                this.out.write((int) (bits >>> shift));
+            }
+        }
+
+        /**
+         * Writes a string as a byte count followed by its UTF-8 bytes.
+         */
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(bytes.length);
+            this.out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the primitive values of the binary format from a stream, keeping
+     * track of the offset for use in error messages.
+     */
+    private static final class Input {
+        private final InputStream in;
+        private final long length;
+        private long offset;
+
+        private Input(InputStream in, long length) {
+            this.in = in;
+            this.length = length;
+            this.offset = 0;
+        }
+
+        private long offset() {
+            return this.offset;
+        }
+
+        private long remaining() {
+            return this.length - this.offset;
+        }
+
+        private int readByte() throws IOException, FileFormatException {
+            int b = this.in.read();
+            if (b < 0) {
+                throw error("Unexpected end of file");
+            }
+            this.offset++;
+            return b;
+        }
+
+        private int readUnsigned() throws IOException, FileFormatException {
+            long start = this.offset;
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw error(start, "Variable-length integer is too long", null);
+        }
+
+        private int readSigned() throws IOException, FileFormatException {
+            int value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a count of items, each of which takes at least one byte.
+         */
+        private int readCount() throws IOException, FileFormatException {
+            long start = this.offset;
+            int count = readUnsigned();
+            if (count < 0 || count > remaining()) {
+                throw error(start, "Invalid count " + Integer.toUnsignedLong(
+                        count), null);
+            }
+            return count;
+        }
+
+        private double readDouble() throws IOException, FileFormatException {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private String readString() throws IOException, FileFormatException {
+            int byteCount = readCount();
+            byte[] bytes = this.in.readNBytes(byteCount);
+            if (bytes.length < byteCount) {
+                throw error("Unexpected end of file");
+            }
+            this.offset += byteCount;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private FileFormatException error(String message) {
+            return error(this.offset, message, null);
+        }
+
+        private FileFormatException error(long offset, String message,
+                Throwable cause) {
+            return new FileFormatException("Byte " + offset + ": " + message,
+                    cause);
+        }
+    }
+}
@@ -7,10 +7,13 @@ import bms.exceptions.NoFloorBelowException;
 import bms.floor.Floor;
 import bms.room.RoomType;
 import bms.util.Encodable;
+import bms.util.EventBus;
 import bms.util.FireDrill;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -36,6 +39,12 @@ public class Building implements FireDrill, Encodable {
      */
     private List<Floor> floors;
 
+    /**
+     * Records whether floors have been added to the building since it was
+     * last saved.
+     */
+    private boolean modified;
+
     /**
      * Creates a new empty building with no rooms.
      *
@@ -45,6 +54,7 @@ public class Building implements FireDrill, Encodable {
     public Building(String name) {
         this.name = name;
         this.floors = new ArrayList<>();
+        this.modified = true;
     }
 
     /**
@@ -67,6 +77,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public List<Floor> getFloors() {
+        ensureLoaded();
         return new ArrayList<>(this.floors);
     }
 
@@ -81,6 +92,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public Floor getFloorByNumber(int floorNumber) {
+        ensureLoaded();
         for (Floor floor : this.floors) {
             if (floor.getFloorNumber() == floorNumber) {
                 return floor;
@@ -112,6 +124,7 @@ public class Building implements FireDrill, Encodable {
     public void addFloor(Floor newFloor) throws
             IllegalArgumentException, DuplicateFloorException,
             NoFloorBelowException, FloorTooSmallException {
+        ensureLoaded();
 
         int newFloorNumber = newFloor.getFloorNumber();
         if (newFloorNumber < 1) {
@@ -142,6 +155,35 @@ public class Building implements FireDrill, Encodable {
 
         // No problems, so add floor to the list of floors
         floors.add(newFloor);
+        this.modified = true;
+        EventBus.getInstance().publish(new BuildingEvent(this));
+    }
+
+    /**
+     * Replaces the floor with the same floor number as the given floor, or
+     * adds it to the top of the building if there is no such floor.
+     * <p>
+     * No checks are made that the building remains valid, so this must only
+     * be used to restore a floor which was valid when it was saved. The timed
+     * items of a replaced floor are deregistered.
+     *
+     * @param floor saved state of the floor
+     */
+    void replaceFloor(Floor floor) {
+        ensureLoaded();
+        for (int i = 0; i < this.floors.size(); i++) {
+            if (this.floors.get(i).getFloorNumber() == floor.getFloorNumber()) {
+                TimedItemManager.getInstance().deregisterTimedItems(
+                        this.floors.get(i).getTimedItems());
+                this.floors.set(i, floor);
+                this.modified = true;
+                EventBus.getInstance().publish(new BuildingEvent(this));
+                return;
+            }
+        }
+        this.floors.add(floor);
+        this.modified = true;
+        EventBus.getInstance().publish(new BuildingEvent(this));
     }
 
     /**
@@ -207,6 +249,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public void fireDrill(RoomType roomType) throws FireDrillException {
+        ensureLoaded();
         if (this.floors.size() < 1) {
             throw new FireDrillException("Cannot conduct fire drill because "
                     + "there are no floors in the building yet!");
@@ -235,16 +278,88 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public void cancelFireDrill() {
+        ensureLoaded();
         for (Floor floor : this.floors) {
             floor.cancelFireDrill();
         }
     }
 
+    /**
+     * Returns a new list containing the timed items of all floors of this
+     * building, from the bottom floor up.
+     * <p>
+     * When a building is no longer used, such as when it is replaced by one
+     * loaded from a file, these should be deregistered from the timed item
+     * manager so that they are no longer elapsed.
+     *
+     * @return timed items of the building
+     * @see Floor#getTimedItems()
+     */
+    public List<TimedItem> getTimedItems() {
+        ensureLoaded();
+        List<TimedItem> timedItems = new ArrayList<>();
+        for (Floor floor : this.floors) {
+            timedItems.addAll(floor.getTimedItems());
+        }
+        return timedItems;
+    }
+
+    /**
+     * Loads the building's floors, if they have not been loaded yet.
+     * <p>
+     * Every method which uses the building's floors calls this first.
+     * Buildings are normally created with all of their floors, so by default
+     * this does nothing; see {@link LazyBuilding}.
+     */
+    void ensureLoaded() {
+    }
+
+    /**
+     * Returns the number of floors in the building, without loading them.
+     *
+     * @return number of floors
+     */
+    int floorCount() {
+        return this.floors.size();
+    }
+
+    /**
+     * Returns whether the building or any of its floors have been created or
+     * changed since they were last marked as saved.
+     * <p>
+     * A building whose floors have not been loaded yet has no changes.
+     *
+     * @return true if the building has unsaved changes
+     */
+    public boolean hasUnsavedChanges() {
+        if (this.modified) {
+            return true;
+        }
+        for (Floor floor : this.floors) {
+            if (floor.hasUnsavedChanges()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the current state of the building and all of its floors as saved.
+     */
+    public void markSaved() {
+        this.modified = false;
+        for (Floor floor : this.floors) {
+            floor.markSaved();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Building)) return false;
         Building building = (Building) o;
+        ensureLoaded();
+        building.ensureLoaded();
         return name.equals(building.name) &&
                 Objects.equals(floors.size(), building.floors.size()) &&
                 Objects.equals(floors, building.floors);
@@ -252,6 +367,7 @@ public class Building implements FireDrill, Encodable {
 
     @Override
     public int hashCode() {
+        ensureLoaded();
         return Objects.hash(name, floors);
     }
 
@@ -272,7 +388,7 @@ public class Building implements FireDrill, Encodable {
     @Override
     public String toString() {
         return String.format("Building: name=\"%s\", floors=%d",
-                this.name, this.floors.size());
+                this.name, floorCount());
     }
 
 
@@ -283,17 +399,24 @@ public class Building implements FireDrill, Encodable {
      */
     @Override
     public String encode() {
+        return Encodable.encodeToString(this);
+    }
 
-        ArrayList<String> floorEncodeArray = new ArrayList<>();
-
-        this.floors.forEach( (floor) -> floorEncodeArray.add(floor.encode()) );
-
-        String floorEncodeArrayStr = Arrays.toString(floorEncodeArray.toArray())
-                .replace("[","").replace("]", "");
-
-
-        return this.getName()+System.lineSeparator()
-                +this.floors.size()+System.lineSeparator()
-                +floorEncodeArrayStr;
+    /**
+     * Writes the machine-readable representation of this building and all of its floors, rooms and sensors
+     * to the given output, one record at a time.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        ensureLoaded();
+        out.append(this.getName()).append(System.lineSeparator())
+                .append(String.valueOf(this.floors.size()));
+        for (Floor floor : this.floors) {
+            out.append(System.lineSeparator());
+            floor.encodeTo(out);
+        }
     }
 }
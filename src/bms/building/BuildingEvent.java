@@ -0,0 +1,28 @@
+package bms.building;
+
+import bms.util.ModelEvent;
+
+/**
+ * Event published when a floor is added to a building, or one of its floors
+ * is replaced.
+ */
+public class BuildingEvent extends ModelEvent {
+
+    /**
+     * Creates an event for a change to the floors of the given building.
+     *
+     * @param building building which changed
+     */
+    public BuildingEvent(Building building) {
+        super(building);
+    }
+
+    /**
+     * Returns the building which changed.
+     *
+     * @return building
+     */
+    public Building getBuilding() {
+        return (Building) getSource();
+    }
+}
@@ -2,12 +2,35 @@ package bms.building;
 
 import bms.exceptions.FileFormatException;
 import bms.floor.Floor;
+import bms.sensors.Sensor;
+import bms.util.Encodable;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
 
-import java.io.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Class which manages the initialisation and saving of buildings by reading and writing data to a file.
@@ -16,6 +39,18 @@ public class BuildingInitialiser {
 
     /**
      * Loads a list of buildings from a save file with the given filename.
+     * <p>
+     * The file is read a line at a time and parsed in a single pass, so only
+     * the current line of the file is held in memory while loading.
+     * <p>
+     * If the file has a journal of incremental saves (see
+     * {@link SaveJournal}), the journal is replayed over the buildings in the
+     * file. All of the loaded buildings are marked as saved.
+     * <p>
+     * Files in the binary save format (see
+     * {@link BuildingInitialiser#saveBuildingsBinary(List, String)}) are
+     * detected by their header and read directly.
+     *
      * @param filename path of the file from which to load a list of buildings
      * @return a list containing all the buildings loaded from the file
      * @throws IOException if an IOException is encountered when calling any IO methods
@@ -24,163 +59,507 @@ public class BuildingInitialiser {
     public static List<Building> loadBuildings(String filename)
             throws IOException,
             FileFormatException {
+        if (BinarySaveFormat.isBinary(Paths.get(filename))) {
+            return loadBuildingsBinary(filename);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(
+                Paths.get(filename), StandardCharsets.UTF_8)) {
+            return finishLoading(new SaveFileParser(
+                    new ReaderSaveFileSource(reader)).parseBuildings(),
+                    filename);
+        }
+    }
 
-        String fileDir = "saves/"+filename;
-        ArrayList numberOfBuildingsInList = new ArrayList();
-        ArrayList allBuildingInformation = new ArrayList();
-        ArrayList indexOfBuildingNames = new ArrayList();
-        List<List<String>> buildingInformation = new ArrayList<>();
+    /**
+     * Loads a list of buildings from a save file with the given filename, by
+     * memory-mapping the file rather than reading it through a stream.
+     * <p>
+     * Records are tokenised straight from the mapped bytes, without creating
+     * a string for each line, which reduces garbage and load time for very
+     * large save files. The resulting buildings are identical to those
+     * returned by {@link BuildingInitialiser#loadBuildings(String)}.
+     * <p>
+     * Binary save files are not memory-mapped, and are loaded as by
+     * {@link BuildingInitialiser#loadBuildings(String)}.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any IO methods
+     * @throws FileFormatException if the file format of the given file is invalid
+     */
+    public static List<Building> loadBuildingsMapped(String filename)
+            throws IOException,
+            FileFormatException {
+        if (BinarySaveFormat.isBinary(Paths.get(filename))) {
+            return loadBuildingsBinary(filename);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            return finishLoading(new SaveFileParser(new MappedSaveFileSource(
+                    channel, 0, channel.size(), 1)).parseBuildings(), filename);
+        }
+    }
 
-        try {
-            File buildingInfo = new File(fileDir);
-            Scanner infoReader = new Scanner(buildingInfo);
-
-            /*
-             * Reading File Information
-             * */
-            while (infoReader.hasNextLine()) {
-                String data = infoReader.nextLine();
-                allBuildingInformation.add(data);
-                /*
-                 * Check if data contains a number to find the building name and add them into an arraylist
-                 * */
-                if (!data.matches(".*\\d.*")) {
-                    numberOfBuildingsInList.add(data);
-                }
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * parsing the buildings in parallel on the common fork-join pool.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any IO methods
+     * @throws FileFormatException if the file format of the given file is invalid
+     * @see BuildingInitialiser#loadBuildingsParallel(String, ForkJoinPool)
+     */
+    public static List<Building> loadBuildingsParallel(String filename)
+            throws IOException,
+            FileFormatException {
+        return loadBuildingsParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * parsing the buildings in parallel on the given pool.
+     * <p>
+     * Loading happens in two phases. First, the file is scanned to find where
+     * each building starts and ends, using only the floor, room and sensor
+     * counts in the header lines. Then each building's block of lines is
+     * parsed as a separate task on the pool. The buildings are returned in
+     * file order, and if more than one building is invalid, the error from
+     * the first of them in the file is reported.
+     * <p>
+     * Binary save files are much cheaper to parse, so are loaded on the
+     * calling thread as by {@link BuildingInitialiser#loadBuildings(String)}.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @param pool pool on which to parse the buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any IO methods
+     * @throws FileFormatException if the file format of the given file is invalid
+     */
+    public static List<Building> loadBuildingsParallel(String filename,
+            ForkJoinPool pool)
+            throws IOException,
+            FileFormatException {
+        if (BinarySaveFormat.isBinary(Paths.get(filename))) {
+            return loadBuildingsBinary(filename);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            SaveFileIndex index = SaveFileIndex.scan(channel);
+
+            List<Callable<Building>> tasks = new ArrayList<>(index.size());
+            for (int i = 0; i < index.size(); i++) {
+                long start = index.getStart(i);
+                long end = index.getEnd(i);
+                int lineNumber = index.getLineNumber(i);
+                tasks.add(() -> new SaveFileParser(new MappedSaveFileSource(
+                        channel, start, end, lineNumber))
+                        .parseSingleBuilding());
             }
 
-            int i = 0;
-            for (Object data : allBuildingInformation) {
-                if (i <= 2) {
-                    if (data.toString().equals(numberOfBuildingsInList.get(i))) {
-                        indexOfBuildingNames.add(allBuildingInformation.indexOf(data.toString()));
-                        i++;
+            List<Future<Building>> results = pool.invokeAll(tasks);
+            List<Building> buildings = new ArrayList<>(index.size());
+            try {
+                for (Future<Building> result : results) {
+                    buildings.add(getResult(result));
+                }
+            } catch (IOException | FileFormatException | RuntimeException e) {
+                // Every task has finished, so the buildings loaded after the
+                // failed one can also be discarded
+                for (int i = buildings.size() + 1; i < results.size(); i++) {
+                    try {
+                        buildings.add(getResult(results.get(i)));
+                    } catch (IOException | FileFormatException
+                            | RuntimeException ignored) {
+                        // Already reporting the first failure
                     }
-                } else {
-                    i = 2;
                 }
+                discardBuildings(buildings);
+                throw e;
             }
+            return finishLoading(buildings, filename);
+        }
+    }
 
-            boolean untilEnd = true;
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * deferring the loading of each building's floors until they are first
+     * used.
+     * <p>
+     * Only the names of the buildings and the locations of their blocks of
+     * lines in the file are read up front. These are kept in an index file in
+     * a cache directory in the user's home directory (see
+     * {@link SaveFileIndex}), which is created by scanning the save file the
+     * first time it is loaded, and reused for as long as the save file is
+     * unchanged. Nothing is written next to the save file. Each building
+     * parses its own block the first time its floors are used, so opening a
+     * file with many buildings takes time proportional to the number of
+     * buildings rather than the size of the file, and once indexed, is nearly
+     * independent of either.
+     * <p>
+     * Because the floors are loaded later, an invalid floor, room or sensor
+     * is not reported by this method, but by an IllegalStateException thrown
+     * when the building is first used, and every time it is used after that.
+     * Buildings which are replaced by the file's journal, and binary save
+     * files, are loaded immediately.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings in the file
+     * @throws IOException if an IOException is encountered when calling any IO methods
+     * @throws FileFormatException if the file cannot be indexed, or a
+     * building name is invalid
+     */
+    public static List<Building> loadBuildingsLazy(String filename)
+            throws IOException,
+            FileFormatException {
+        Path path = Paths.get(filename);
+        if (BinarySaveFormat.isBinary(path)) {
+            return loadBuildingsBinary(filename);
+        }
+        long fileSize = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
 
-            int numberCounter = 0;
-            boolean lastLoop = false;
+        Path indexPath = SaveFileIndex.indexPath(path);
+        SaveFileIndex index = SaveFileIndex.read(indexPath, fileSize,
+                lastModified);
+        if (index == null) {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.READ)) {
+                index = SaveFileIndex.scan(channel);
+            }
+            try {
+                index.write(indexPath, fileSize, lastModified);
+            } catch (IOException e) {
+                // The index only speeds up later loads, so carry on without
+                SaveFileIndex.delete(path);
+            }
+        }
 
-            while (untilEnd) {
+        List<Building> buildings = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getName(i).isBlank()) {
+                throw new FileFormatException("Line "
+                        + index.getLineNumber(i)
+                        + ": Building name must not be blank");
+            }
+            buildings.add(new LazyBuilding(path, fileSize, lastModified,
+                    index, i));
+        }
+        return finishLoading(buildings, filename);
+    }
 
-                List<String> individualInformation = new ArrayList<>();
-                int startindex = 0;
-                int endindex = 0;
+    /**
+     * Number of previous versions of a save file which are kept when it is
+     * overwritten, as "filename.1" (the most recent) to "filename.N".
+     */
+    public static final int SAVE_GENERATIONS = 3;
 
-                if (lastLoop) {
-                    startindex = (int) indexOfBuildingNames.get(numberCounter + 1);
-                    endindex = allBuildingInformation.size();
-                } else {
-                    startindex = (int) indexOfBuildingNames.get(numberCounter);
-                    endindex = (int) indexOfBuildingNames.get(numberCounter + 1);
-                }
+    /**
+     * Extension of save files which are saved in the binary format.
+     */
+    public static final String BINARY_EXTENSION = ".bms";
 
-                firstLoop:
-                for (int j = startindex + 1; j < endindex; j++) {
-                    individualInformation.add((String) allBuildingInformation.get(j));
-                    if (endindex != allBuildingInformation.size()) {
-                        if (numberOfBuildingsInList.get(numberCounter + 1).equals(allBuildingInformation.get(j + 1))) {
-                            individualInformation.add(0, (String) numberOfBuildingsInList.get(numberCounter));
-                            if (numberCounter + 1 == numberOfBuildingsInList.size() - 1) {
-                                lastLoop = true;
-                            } else {
-                                if (numberCounter + 1 < numberOfBuildingsInList.size() - 1) {
-                                    numberCounter++;
-                                    break firstLoop;
-                                } else {
-                                    untilEnd = false;
-                                }
-                            }
-                        }
-                    } else {
-                        if (j == endindex - 1) {
-                            individualInformation.add(0, (String) numberOfBuildingsInList.get(numberCounter + 1));
-                        }
-                        untilEnd = false;
-                    }
+    /**
+     * Saves the given buildings to a file with the given filename, in the
+     * text format read by {@link BuildingInitialiser#loadBuildings(String)}.
+     * <p>
+     * The encoded buildings are joined by a line separator. Each building,
+     * floor, room and sensor record is streamed directly to a buffered
+     * writer, so the encoded representation of the buildings is never held in
+     * memory all at once.
+     * <p>
+     * The buildings are first written to a temporary file in the same
+     * directory, which is forced to disk before being atomically moved over
+     * the target file. If the save fails part way through, or the system
+     * crashes, the target file is left either entirely old or entirely new,
+     * and never truncated. Before being replaced, the previous contents of
+     * the target file are rotated into up to {@link #SAVE_GENERATIONS}
+     * numbered backups. Any journal of incremental saves to the file (see
+     * {@link SaveJournal}) is deleted, as the file now holds every change.
+     *
+     * @param buildings buildings to save, or snapshots of them
+     * @param filename path of the file to save to
+     * @throws IOException if an IOException is encountered when writing
+     * @see BuildingSnapshot
+     */
+    public static void saveBuildings(List<? extends Encodable> buildings,
+            String filename)
+            throws IOException {
+        writeAtomically(filename, channel -> {
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(
+                    channel, StandardCharsets.UTF_8));
+            for (int i = 0; i < buildings.size(); i++) {
+                if (i > 0) {
+                    writer.write(System.lineSeparator());
                 }
+                buildings.get(i).encodeTo(writer);
+            }
+            writer.flush();
+        });
+    }
 
-                buildingInformation.add(individualInformation);
+    /**
+     * Saves the given buildings to a file with the given filename, in the
+     * compact binary format.
+     * <p>
+     * Binary save files hold the same buildings as text save files, but are
+     * several times smaller and much faster to load. They are detected
+     * automatically by {@link BuildingInitialiser#loadBuildings(String)}.
+     * The file is replaced atomically, as by
+     * {@link BuildingInitialiser#saveBuildings(List, String)}.
+     *
+     * @param buildings snapshots of the buildings to save
+     * @param filename path of the file to save to
+     * @throws IOException if an IOException is encountered when writing
+     * @see BinarySaveFormat
+     */
+    public static void saveBuildingsBinary(List<BuildingSnapshot> buildings,
+            String filename)
+            throws IOException {
+        writeAtomically(filename, channel -> {
+            BufferedOutputStream out = new BufferedOutputStream(
+                    Channels.newOutputStream(channel));
+            BinarySaveFormat.write(buildings, out);
+            out.flush();
+        });
+    }
+
+    /**
+     * Returns whether the given file should be saved in the binary format,
+     * based on its extension.
+     *
+     * @param filename path of a save file
+     * @return true if the filename ends with {@link #BINARY_EXTENSION}
+     */
+    public static boolean isBinaryFilename(String filename) {
+        return filename.endsWith(BINARY_EXTENSION);
+    }
 
+    /**
+     * Writes the contents of a save file.
+     */
+    private interface SaveFileWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Writes a save file to a temporary file, forces it to disk, then
+     * atomically moves it over the given file, after rotating the previous
+     * versions of the file.
+     */
+    private static void writeAtomically(String filename, SaveFileWriter writer)
+            throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path directory = target.getParent();
+        Path temp = createTempFile(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+
+            rotateGenerations(target);
+            SaveFileIndex.delete(target);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
             }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        forceDirectory(directory);
+        // The journal's entries are older than the new file. It is only
+        // deleted once the old file is replaced, since they still apply to
+        // it until then; a journal left by a crash before this point does
+        // not match the new file, so is ignored when loading it.
+        Files.deleteIfExists(SaveJournal.journalPath(target));
+    }
+
+    /**
+     * Creates an empty temporary file next to the given file, with the same
+     * permissions as the file if it exists, or the default permissions for a
+     * new file if not.
+     * <p>
+     * Files.createTempFile is not used since it makes the file readable only
+     * by its owner, which the saved file would then keep.
+     */
+    private static Path createTempFile(Path target) throws IOException {
+        Path temp;
+        while (true) {
+            temp = target.resolveSibling(target.getFileName() + "."
+                    + Long.toUnsignedString(
+                            ThreadLocalRandom.current().nextLong())
+                    + ".tmp");
+            try {
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temp,
+                        Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException | IOException e) {
+                // Permissions are not POSIX on this platform, or cannot be
+                // changed; the default permissions are used instead
+            }
+        }
+        return temp;
+    }
+
+    /**
+     * Shifts each numbered backup of the given file up by one generation,
+     * discarding the oldest, then copies the file itself to "filename.1".
+     * <p>
+     * The file is left in place, so that it is only ever replaced by the
+     * atomic move of the new save.
+     */
+    private static void rotateGenerations(Path target) throws IOException {
+        if (SAVE_GENERATIONS <= 0 || !Files.exists(target)) {
+            return;
+        }
+        for (int generation = SAVE_GENERATIONS - 1; generation >= 1;
+                generation--) {
+            Path older = generation(target, generation);
+            if (Files.exists(older)) {
+                Files.move(older, generation(target, generation + 1),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path newest = generation(target, 1);
+        Files.deleteIfExists(newest);
+        try {
+            // A hard link preserves the old contents without copying them
+            Files.createLink(newest, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, newest);
+        }
+    }
+
+    /**
+     * Returns the path of the given numbered backup of a save file.
+     */
+    private static Path generation(Path target, int generation) {
+        return target.resolveSibling(target.getFileName() + "." + generation);
+    }
+
+    /**
+     * Forces the directory entry of a newly moved file to disk, on platforms
+     * which allow directories to be opened.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on all platforms; the file itself is already
+            // durable, only the rename may be lost on a crash
+        }
+    }
 
-            System.out.println(buildingInformation);
-
-            infoReader.close();
-        } catch (FileNotFoundException e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
-        }
-
-        List<Building> buildingList = new ArrayList<>();
-        Building building = new Building("");
-        buildingList.add(building);
-        return buildingList;
-
-
-//        InputStream in = BuildingInitialiser.class.getResourceAsStream("/lol.txt"); // or /some/resource/path/lol.txt for some other path starting at root of classpath
-
-//
-//        String fileName = "saves/"+filename;
-//        List<String> fileLines = new ArrayList<>();
-//
-//        try (BufferedReader br = new BufferedReader(
-//                new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8));) {
-//
-//            String line;
-//
-//            while ((line = br.readLine()) != null) {
-//                fileLines.add(line);
-//                // System.out.println(line);
-//            }
-//        } catch (Exception e) {
-//            throw new IOException("File path invalid!");
-//        }
-//
-//        // first building
-//        Building building;
-//        List<Building> buildingList = new ArrayList<>();
-//        int numOfFloors = 0;
-//        int floorNum = 0;
-//        double floorWidth = 0.0, floorLength = 0.0;
-//        Floor floor;
-//        List<Floor> floorList;
-//
-//
-//        String buildingName = fileLines.get(0);
-//        for (int i = 0; i < fileLines.size(); i++) {
-//            if (i == 0){
-//                buildingName = fileLines.get(i);
-//                building = new Building(buildingName);
-//                buildingList.add(building);
-//                fileLines.set(i,"");
-//            }
-//            if (i == 1){
-//                numOfFloors = Integer.parseInt(fileLines.get(i));
-//            }
-//
-//            if (i == 2 && numOfFloors >= 1){
-//                numOfFloors--;
-//                String[] floorLine = fileLines.get(i).split(":");
-//                floorNum = Integer.parseInt(floorLine[0]);
-//                floorWidth = Integer.parseInt(floorLine[1]);
-//                floorLength = Integer.parseInt(floorLine[2]);
-//
-//                floor = new Floor(floorNum,floorWidth,floorLength);
-//
-//            }
-//
-////            values.removeAll(Arrays.asList("")); //remove all blank String
-//
-//        }
-//
-//        return buildingList;
+    /**
+     * Loads the buildings in a binary save file.
+     */
+    private static List<Building> loadBuildingsBinary(String filename)
+            throws IOException, FileFormatException {
+        Path path = Paths.get(filename);
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(path))) {
+            return finishLoading(BinarySaveFormat.read(in, Files.size(path)),
+                    filename);
+        }
+    }
 
+    /**
+     * Replays the journal of the save file the given buildings were loaded
+     * from, then marks them as saved.
+     */
+    private static List<Building> finishLoading(List<Building> buildings,
+            String filename) throws IOException, FileFormatException {
+        try {
+            SaveJournal.replay(buildings, filename);
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            discardBuildings(buildings);
+            throw e;
+        }
+        for (Building building : buildings) {
+            building.markSaved();
+        }
+        return buildings;
+    }
 
+    /**
+     * Deregisters the timed items of buildings which are being discarded,
+     * such as those loaded before an error in the rest of a file, so that
+     * they are no longer elapsed.
+     *
+     * @param buildings buildings being discarded
+     */
+    static void discardBuildings(List<Building> buildings) {
+        List<TimedItem> timedItems = new ArrayList<>();
+        for (Building building : buildings) {
+            timedItems.addAll(building.getTimedItems());
+        }
+        TimedItemManager.getInstance().deregisterTimedItems(timedItems);
+    }
+
+    /**
+     * Deregisters the timed items of a floor which is being discarded.
+     *
+     * @param floor floor being discarded
+     */
+    static void discardFloor(Floor floor) {
+        TimedItemManager.getInstance().deregisterTimedItems(
+                floor.getTimedItems());
+    }
+
+    /**
+     * Deregisters a sensor which is being discarded, if it is a timed item.
+     *
+     * @param sensor sensor being discarded
+     */
+    static void discardSensor(Sensor sensor) {
+        if (sensor instanceof TimedItem) {
+            TimedItemManager.getInstance().deregisterTimedItem(
+                    (TimedItem) sensor);
+        }
+    }
+
+    /**
+     * Waits for a building to finish loading, rethrowing any exception thrown
+     * while it was being loaded.
+     */
+    private static Building getResult(Future<Building> result)
+            throws IOException, FileFormatException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading");
+        } catch (ExecutionException e) {
+            // The pool wraps checked exceptions thrown by a task in plain
+            // RuntimeExceptions, so unwrap them to find the original
+            Throwable cause = e.getCause();
+            while (cause != null && cause.getClass() == RuntimeException.class
+                    && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof FileFormatException) {
+                throw (FileFormatException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 }
@@ -0,0 +1,248 @@
+package bms.building;
+
+import bms.floor.Floor;
+import bms.floor.MaintenanceSchedule;
+import bms.hazardevaluation.HazardEvaluator;
+import bms.hazardevaluation.WeightingBasedHazardEvaluator;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.HazardSensor;
+import bms.sensors.Sensor;
+import bms.util.Encodable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable copy of the saved state of a building, which can be encoded
+ * on another thread while the building itself continues to change.
+ * <p>
+ * Taking a snapshot only copies the building's structure (its floors, rooms,
+ * sensor lists, hazard evaluators and maintenance schedules); nothing is
+ * encoded until {@link BuildingSnapshot#encodeTo(Appendable)} is called.
+ * Sensors are shared with the building rather than copied, since none of the
+ * state they encode can change after they are created.
+ */
+public class BuildingSnapshot implements Encodable {
+
+    /**
+     * Saved state of a floor.
+     */
+    static class FloorSnapshot {
+        private final int floorNumber;
+        private final double width;
+        private final double length;
+        private final int[] maintenanceOrder;
+        private final List<RoomSnapshot> rooms;
+
+        FloorSnapshot(Floor floor) {
+            this.floorNumber = floor.getFloorNumber();
+            this.width = floor.getWidth();
+            this.length = floor.getLength();
+
+            MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+            this.maintenanceOrder = schedule == null
+                    ? null
+                    : schedule.getRoomOrder().stream()
+                            .mapToInt(Room::getRoomNumber).toArray();
+
+            List<Room> floorRooms = floor.getRooms();
+            this.rooms = new ArrayList<>(floorRooms.size());
+            for (Room room : floorRooms) {
+                this.rooms.add(new RoomSnapshot(room));
+            }
+        }
+
+        void encodeTo(Appendable out) throws IOException {
+            out.append(String.valueOf(this.floorNumber)).append(':')
+                    .append(String.valueOf(this.width)).append(':')
+                    .append(String.valueOf(this.length)).append(':')
+                    .append(String.valueOf(this.rooms.size()));
+            if (this.maintenanceOrder != null) {
+                out.append(':');
+                for (int i = 0; i < this.maintenanceOrder.length; i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    out.append(String.valueOf(this.maintenanceOrder[i]));
+                }
+            }
+            for (RoomSnapshot room : this.rooms) {
+                out.append(System.lineSeparator());
+                room.encodeTo(out);
+            }
+        }
+
+        void writeBinary(BinarySaveFormat.Output out) throws IOException {
+            out.writeSigned(this.floorNumber);
+            out.writeDouble(this.width);
+            out.writeDouble(this.length);
+            out.writeUnsigned(this.rooms.size());
+            for (RoomSnapshot room : this.rooms) {
+                room.writeBinary(out);
+            }
+            if (this.maintenanceOrder == null) {
+                out.writeUnsigned(0);
+            } else {
+                out.writeUnsigned(this.maintenanceOrder.length);
+                for (int roomNumber : this.maintenanceOrder) {
+                    out.writeSigned(roomNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saved state of a room.
+     */
+    private static class RoomSnapshot {
+        private final int roomNumber;
+        private final RoomType type;
+        private final double area;
+        private final String hazardEvaluator;
+        private final List<Sensor> sensors;
+        private final int[] weightings;
+
+        private RoomSnapshot(Room room) {
+            this.roomNumber = room.getRoomNumber();
+            this.type = room.getType();
+            this.area = room.getArea();
+            this.sensors = room.getSensors();
+
+            HazardEvaluator evaluator = room.getHazardEvaluator();
+            this.hazardEvaluator = evaluator == null
+                    ? null
+                    : evaluator.toString();
+            if (evaluator instanceof WeightingBasedHazardEvaluator) {
+                this.weightings = new int[this.sensors.size()];
+                for (int i = 0; i < this.sensors.size(); i++) {
+                    Sensor sensor = this.sensors.get(i);
+                    this.weightings[i] = sensor instanceof HazardSensor
+                            ? ((WeightingBasedHazardEvaluator) evaluator)
+                                    .getWeighting((HazardSensor) sensor)
+                            : 0;
+                }
+            } else {
+                this.weightings = null;
+            }
+        }
+
+        private void encodeTo(Appendable out) throws IOException {
+            out.append(String.valueOf(this.roomNumber)).append(':')
+                    .append(this.type.toString()).append(':')
+                    .append(String.valueOf(this.area)).append(':')
+                    .append(String.valueOf(this.sensors.size()));
+            if (this.hazardEvaluator != null) {
+                out.append(':').append(this.hazardEvaluator);
+            }
+            for (int i = 0; i < this.sensors.size(); i++) {
+                out.append(System.lineSeparator());
+                this.sensors.get(i).encodeTo(out);
+                if (this.weightings != null) {
+                    out.append('@').append(String.valueOf(this.weightings[i]));
+                }
+            }
+        }
+
+        private void writeBinary(BinarySaveFormat.Output out)
+                throws IOException {
+            out.writeSigned(this.roomNumber);
+            out.writeByte(this.type.ordinal());
+            out.writeDouble(this.area);
+            out.writeUnsigned(this.sensors.size());
+            out.writeByte(BinarySaveFormat.evaluatorCode(this.hazardEvaluator));
+            for (int i = 0; i < this.sensors.size(); i++) {
+                BinarySaveFormat.writeSensor(out, this.sensors.get(i));
+                if (this.weightings != null) {
+                    out.writeSigned(this.weightings[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Name of the building.
+     */
+    private final String name;
+
+    /**
+     * Saved state of each floor in the building.
+     */
+    private final List<FloorSnapshot> floors;
+
+    /**
+     * Takes a snapshot of the current saved state of the given building.
+     * <p>
+     * The building must not be modified while the snapshot is being taken.
+     *
+     * @param building building to take a snapshot of
+     */
+    public BuildingSnapshot(Building building) {
+        this.name = building.getName();
+        List<Floor> buildingFloors = building.getFloors();
+        this.floors = new ArrayList<>(buildingFloors.size());
+        for (Floor floor : buildingFloors) {
+            this.floors.add(new FloorSnapshot(floor));
+        }
+    }
+
+    /**
+     * Takes a snapshot of each of the given buildings.
+     *
+     * @param buildings buildings to take snapshots of
+     * @return list of snapshots, in the same order as the buildings
+     */
+    public static List<BuildingSnapshot> of(List<Building> buildings) {
+        List<BuildingSnapshot> snapshots = new ArrayList<>(buildings.size());
+        for (Building building : buildings) {
+            snapshots.add(new BuildingSnapshot(building));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the encoded representation of the building at the time this
+     * snapshot was taken.
+     *
+     * @return encoded String representation, identical to the result of
+     * {@link Building#encode()} when the snapshot was taken
+     */
+    @Override
+    public String encode() {
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes the encoded representation of the building at the time this
+     * snapshot was taken to the given output.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append(this.name).append(System.lineSeparator())
+                .append(String.valueOf(this.floors.size()));
+        for (FloorSnapshot floor : this.floors) {
+            out.append(System.lineSeparator());
+            floor.encodeTo(out);
+        }
+    }
+
+    /**
+     * Writes the building at the time this snapshot was taken in the binary
+     * save file format.
+     *
+     * @param out output to write to
+     * @throws IOException if an IOException is encountered when writing
+     * @see BinarySaveFormat
+     */
+    void writeBinary(BinarySaveFormat.Output out) throws IOException {
+        out.writeString(this.name);
+        out.writeUnsigned(this.floors.size());
+        for (FloorSnapshot floor : this.floors) {
+            floor.writeBinary(out);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A building whose floors are only loaded from its save file the first time
+ * they are used.
+ * <p>
+ * Until then, the building holds only its name and the location of its block
+ * of lines in the save file, so a save file with many buildings can be opened
+ * without parsing the buildings which are never looked at. Once loaded, the
+ * building behaves exactly like any other building.
+ * <p>
+ * Sensors and maintenance schedules which are loaded late are caught up with
+ * the number of minutes which have elapsed since the building was indexed.
+ */
+class LazyBuilding extends Building {
+
+    /**
+     * Path of the save file containing the building.
+     */
+    private final Path file;
+
+    /**
+     * Size of the save file when it was indexed.
+     */
+    private final long fileSize;
+
+    /**
+     * Modification time of the save file when it was indexed.
+     */
+    private final long lastModified;
+
+    /**
+     * File offset at which the building's block of lines starts.
+     */
+    private final long start;
+
+    /**
+     * File offset at which the building's block of lines ends.
+     */
+    private final long end;
+
+    /**
+     * Line number of the building's name line.
+     */
+    private final int lineNumber;
+
+    /**
+     * Number of floors in the building's block.
+     */
+    private final int indexedFloorCount;
+
+    /**
+     * Minutes elapsed on the timed item manager when the building was
+     * indexed.
+     */
+    private final long indexedAtMinute;
+
+    /**
+     * Whether the building's floors have been loaded.
+     */
+    private boolean loaded;
+
+    /**
+     * Whether the building's floors are being loaded.
+     */
+    private boolean loading;
+
+    /**
+     * Error encountered while loading the building's floors, or null if
+     * loading has not failed.
+     */
+    private RuntimeException failure;
+
+    /**
+     * Creates a building which will load its floors from the given building
+     * of an indexed save file.
+     *
+     * @param file path of the save file
+     * @param fileSize size of the save file when it was indexed
+     * @param lastModified modification time of the save file when it was
+     *                     indexed, in milliseconds since the epoch
+     * @param index index of the save file
+     * @param building index of the building in file order
+     */
+    LazyBuilding(Path file, long fileSize, long lastModified,
+            SaveFileIndex index, int building) {
+        super(index.getName(building));
+        this.file = file;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.start = index.getStart(building);
+        this.end = index.getEnd(building);
+        this.lineNumber = index.getLineNumber(building);
+        this.indexedFloorCount = index.getFloorCount(building);
+        this.indexedAtMinute = TimedItemManager.getInstance()
+                .getMinutesElapsed();
+        this.loaded = false;
+        this.loading = false;
+        this.failure = null;
+    }
+
+    /**
+     * Loads the building's floors from the save file, if they have not been
+     * loaded yet.
+     * <p>
+     * If loading fails, the building is marked as failed: the floors loaded
+     * before the error are discarded, and every later use of the building
+     * throws the same kind of exception again, rather than treating the
+     * partly loaded building as complete.
+     *
+     * @throws UncheckedIOException if the save file cannot be read
+     * @throws IllegalStateException if the save file has changed since it
+     * was indexed, or the building's block of lines is invalid, or loading
+     * the building has already failed
+     */
+    @Override
+    void ensureLoaded() {
+        if (this.loaded || this.loading) {
+            // Adding the floors while loading uses the building's floors
+            return;
+        }
+        if (this.failure != null) {
+            throw new IllegalStateException(this.failure.getMessage(),
+                    this.failure);
+        }
+        this.loading = true;
+        try {
+            if (Files.size(this.file) != this.fileSize
+                    || Files.getLastModifiedTime(this.file).toMillis()
+                    != this.lastModified) {
+                throw new IllegalStateException("Save file \"" + this.file
+                        + "\" changed before building \"" + getName()
+                        + "\" was loaded");
+            }
+            try (FileChannel channel = FileChannel.open(this.file,
+                    StandardOpenOption.READ)) {
+                new SaveFileParser(new MappedSaveFileSource(channel,
+                        this.start, this.end, this.lineNumber))
+                        .parseSingleBuildingInto(this);
+            }
+        } catch (IOException e) {
+            throw fail(new UncheckedIOException("Could not load building \""
+                    + getName() + "\"", e));
+        } catch (FileFormatException e) {
+            throw fail(new IllegalStateException("Could not load building \""
+                    + getName() + "\": " + e.getMessage(), e));
+        } catch (RuntimeException e) {
+            throw fail(e);
+        } finally {
+            this.loading = false;
+        }
+        this.loaded = true;
+        catchUp(TimedItemManager.getInstance().getMinutesElapsed()
+                - this.indexedAtMinute);
+        markSaved();
+    }
+
+    /**
+     * Marks the building as failed to load with the given error, discarding
+     * the floors loaded before it, and returns the error to be thrown.
+     */
+    private RuntimeException fail(RuntimeException error) {
+        TimedItemManager.getInstance().deregisterTimedItems(
+                super.getTimedItems());
+        // The discarded floors are not changes which need saving, and the
+        // building's lines in the save file are kept as they are
+        markSaved();
+        this.failure = error;
+        return error;
+    }
+
+    /**
+     * Returns the timed items of the building's floors, without loading them
+     * if they have not been loaded yet, since only loaded floors have
+     * registered timed items.
+     */
+    @Override
+    public List<TimedItem> getTimedItems() {
+        return this.loaded ? super.getTimedItems() : List.of();
+    }
+
+    @Override
+    int floorCount() {
+        return this.loaded ? super.floorCount() : this.indexedFloorCount;
+    }
+
+    /**
+     * Elapses the given number of minutes on the building's newly loaded
+     * sensors and maintenance schedules.
+     * <p>
+     * Each maintenance schedule is stepped a minute at a time along with the
+     * sensors of its rooms, as in a normal tick, so that it sees their state
+     * at each minute; sensors which no schedule depends on are advanced in a
+     * single step.
+     */
+    private void catchUp(long minutes) {
+        TimedItemManager.getInstance().fastForward(super.getTimedItems(),
+                minutes);
+    }
+}
@@ -0,0 +1,374 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads save file records directly from a memory-mapped region of a file.
+ * <p>
+ * Values are tokenised from the mapped bytes without creating a string for
+ * each line; only building names are decoded into strings. Files larger than
+ * a single mapping are read through a sliding window, which is re-mapped at
+ * the start of the first record that does not fit in the current window.
+ */
+class MappedSaveFileSource implements SaveFileSource {
+
+    /**
+     * Largest number of bytes mapped at once.
+     */
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Powers of ten which can be represented exactly as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * Most significant digits of a number converted without
+     * {@link Double#parseDouble(String)}, whose mantissa is below 2^53 and
+     * so is represented exactly as a double.
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Channel of the file being read.
+     */
+    private final FileChannel channel;
+
+    /**
+     * File offset at which the region being read ends (exclusive).
+     */
+    private final long end;
+
+    /**
+     * Currently mapped window of the file; null until the first record.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * File offset of the first byte of the mapped window.
+     */
+    private long windowStart;
+
+    /**
+     * File offset of the start of the next record.
+     */
+    private long nextRecordStart;
+
+    /**
+     * File offset of the start of the current record.
+     */
+    private long recordStart;
+
+    /**
+     * Index in the window of the next unread byte of the current record.
+     */
+    private int position;
+
+    /**
+     * Index in the window of the end of the current record (exclusive),
+     * not including any line terminator.
+     */
+    private int recordEnd;
+
+    /**
+     * Line number of the current record.
+     */
+    private int lineNumber;
+
+    /**
+     * Creates a new save file source reading the records between the given
+     * offsets of a file.
+     *
+     * @param channel channel of the file to read
+     * @param start file offset of the first record to read
+     * @param end file offset at which to stop reading (exclusive)
+     * @param firstLineNumber line number of the first record in the region
+     */
+    MappedSaveFileSource(FileChannel channel, long start, long end,
+            int firstLineNumber) {
+        this.channel = channel;
+        this.end = end;
+        this.nextRecordStart = start;
+        this.lineNumber = firstLineNumber - 1;
+    }
+
+    @Override
+    public boolean nextRecord() throws IOException {
+        if (this.nextRecordStart >= this.end) {
+            return false;
+        }
+        if (this.buffer == null || this.nextRecordStart
+                >= this.windowStart + this.buffer.limit()) {
+            map(this.nextRecordStart);
+        }
+        int start = (int) (this.nextRecordStart - this.windowStart);
+        int newline = indexOfNewline(start);
+        if (newline < 0 && start > 0 && !windowReachesEnd()) {
+            // Record continues past the window, so move the window to it
+            map(this.nextRecordStart);
+            start = 0;
+            newline = indexOfNewline(start);
+        }
+        if (newline < 0) {
+            if (!windowReachesEnd()) {
+                throw new IOException("Line " + (this.lineNumber + 1)
+                        + " is too long to be mapped");
+            }
+            newline = this.buffer.limit();
+            this.nextRecordStart = this.end;
+        } else {
+            this.nextRecordStart = this.windowStart + newline + 1;
+        }
+
+        this.recordStart = this.windowStart + start;
+        this.recordEnd = newline;
+        if (this.recordEnd > start
+                && this.buffer.get(this.recordEnd - 1) == '\r') {
+            this.recordEnd--;
+        }
+        this.position = start;
+        this.lineNumber++;
+        return true;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * Returns the file offset at which the current record starts.
+     *
+     * @return offset of the first byte of the current record
+     */
+    long getRecordOffset() {
+        return this.recordStart;
+    }
+
+    @Override
+    public boolean atEndOfRecord() {
+        return this.position >= this.recordEnd;
+    }
+
+    @Override
+    public boolean skip(char delimiter) {
+        if (!atEndOfRecord() && this.buffer.get(this.position) == delimiter) {
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void skipValue() {
+        this.position = tokenEnd();
+    }
+
+    @Override
+    public String readText() {
+        byte[] bytes = new byte[this.recordEnd - this.position];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = this.buffer.get(this.position + i);
+        }
+        this.position = this.recordEnd;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int readInt() throws FileFormatException {
+        int tokenEnd = tokenEnd();
+        int index = this.position;
+        boolean negative = index < tokenEnd && this.buffer.get(index) == '-';
+        if (negative) {
+            index++;
+        }
+        if (index == tokenEnd) {
+            throw error("Expected an integer");
+        }
+        long value = 0;
+        for (; index < tokenEnd; index++) {
+            int digit = this.buffer.get(index) - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Expected an integer but found \""
+                        + token(this.position, tokenEnd) + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw error("Integer out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("Integer out of range");
+        }
+        this.position = tokenEnd;
+        return (int) value;
+    }
+
+    @Override
+    public double readDouble() throws FileFormatException {
+        int tokenEnd = tokenEnd();
+        int index = this.position;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; index < tokenEnd; index++) {
+            byte b = this.buffer.get(index);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || digits >= MAX_FAST_DIGITS) {
+                break;
+            }
+            mantissa = mantissa * 10 + (b - '0');
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+
+        double value;
+        if (index == tokenEnd && digits > 0) {
+            // Plain decimal with few enough digits to be converted exactly
+            value = fractionDigits > 0
+                    ? mantissa / POWERS_OF_TEN[fractionDigits]
+                    : mantissa;
+        } else {
+            String token = token(this.position, tokenEnd);
+            try {
+                value = Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error("Expected a number but found \"" + token + "\"");
+            }
+        }
+        this.position = tokenEnd;
+        return value;
+    }
+
+    @Override
+    public int[] readIntList() throws FileFormatException {
+        int count = 1;
+        for (int index = this.position; index < this.recordEnd; index++) {
+            byte b = this.buffer.get(index);
+            if (b == ':' || b == '@') {
+                break;
+            }
+            if (b == ',') {
+                count++;
+            }
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && !skip(',')) {
+                throw error("Expected ','");
+            }
+            values[i] = readInt();
+        }
+        return values;
+    }
+
+    @Override
+    public int readKeyword(String[] keywords) throws FileFormatException {
+        int tokenEnd = tokenEnd();
+        int length = tokenEnd - this.position;
+        for (int i = 0; i < keywords.length; i++) {
+            if (keywords[i].length() == length && matches(keywords[i])) {
+                this.position = tokenEnd;
+                return i;
+            }
+        }
+        throw error("Unexpected value \"" + token(this.position, tokenEnd)
+                + "\"");
+    }
+
+    /**
+     * Maps a window of the file starting at the given offset.
+     */
+    private void map(long start) throws IOException {
+        long size = Math.min(MAX_WINDOW_SIZE, this.end - start);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, start,
+                size);
+        this.windowStart = start;
+    }
+
+    /**
+     * Returns whether the mapped window extends to the end of the region.
+     */
+    private boolean windowReachesEnd() {
+        return this.windowStart + this.buffer.limit() >= this.end;
+    }
+
+    /**
+     * Returns the index of the next '\n' in the window at or after the given
+     * index, or -1 if there is none.
+     */
+    private int indexOfNewline(int from) {
+        int limit = this.buffer.limit();
+        for (int index = from; index < limit; index++) {
+            if (this.buffer.get(index) == '\n') {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the end of the token starting at the current
+     * position, ie. the index of the next delimiter or the end of the record.
+     */
+    private int tokenEnd() {
+        int index = this.position;
+        while (index < this.recordEnd) {
+            byte b = this.buffer.get(index);
+            if (b == ':' || b == ',' || b == '@') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether the bytes at the current position match the given
+     * ASCII keyword.
+     */
+    private boolean matches(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (this.buffer.get(this.position + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the bytes between the given indices, for use in error messages.
+     */
+    private String token(int from, int to) {
+        int savedPosition = this.position;
+        int savedEnd = this.recordEnd;
+        this.position = from;
+        this.recordEnd = to;
+        String token = readText();
+        this.position = savedPosition;
+        this.recordEnd = savedEnd;
+        return token;
+    }
+
+    /**
+     * Creates an exception describing a problem on the current line.
+     */
+    private FileFormatException error(String message) {
+        return new FileFormatException("Line " + this.lineNumber + ": "
+                + message);
+    }
+}
@@ -0,0 +1,196 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads save file records line by line from a buffered character stream.
+ * <p>
+ * Only the current line is held in memory; values are parsed directly out of
+ * the line without splitting it into intermediate strings.
+ */
+class ReaderSaveFileSource implements SaveFileSource {
+
+    /**
+     * Reader from which lines are read.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * Current line; null before the first record and after the end of file.
+     */
+    private String line;
+
+    /**
+     * Index of the next unread character in the current line.
+     */
+    private int position;
+
+    /**
+     * Line number of the current line.
+     */
+    private int lineNumber;
+
+    /**
+     * Creates a new save file source reading from the given reader.
+     *
+     * @param reader buffered reader over the save file
+     */
+    ReaderSaveFileSource(BufferedReader reader) {
+        this.reader = reader;
+        this.lineNumber = 0;
+    }
+
+    @Override
+    public boolean nextRecord() throws IOException {
+        this.line = this.reader.readLine();
+        if (this.line == null) {
+            return false;
+        }
+        this.lineNumber++;
+        this.position = 0;
+        return true;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    @Override
+    public boolean atEndOfRecord() {
+        return this.position >= this.line.length();
+    }
+
+    @Override
+    public boolean skip(char delimiter) {
+        if (!atEndOfRecord() && this.line.charAt(this.position) == delimiter) {
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void skipValue() {
+        this.position = tokenEnd();
+    }
+
+    @Override
+    public String readText() {
+        String text = this.line.substring(this.position);
+        this.position = this.line.length();
+        return text;
+    }
+
+    @Override
+    public int readInt() throws FileFormatException {
+        int end = tokenEnd();
+        int index = this.position;
+        boolean negative = index < end && this.line.charAt(index) == '-';
+        if (negative) {
+            index++;
+        }
+        if (index == end) {
+            throw error("Expected an integer");
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            char c = this.line.charAt(index);
+            if (c < '0' || c > '9') {
+                throw error("Expected an integer but found \""
+                        + this.line.substring(this.position, end) + "\"");
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw error("Integer out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("Integer out of range");
+        }
+        this.position = end;
+        return (int) value;
+    }
+
+    @Override
+    public double readDouble() throws FileFormatException {
+        int end = tokenEnd();
+        String token = this.line.substring(this.position, end);
+        double value;
+        try {
+            value = Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw error("Expected a number but found \"" + token + "\"");
+        }
+        this.position = end;
+        return value;
+    }
+
+    @Override
+    public int[] readIntList() throws FileFormatException {
+        int count = 1;
+        int end = this.position;
+        while (end < this.line.length()) {
+            char c = this.line.charAt(end);
+            if (c == ':' || c == '@') {
+                break;
+            }
+            if (c == ',') {
+                count++;
+            }
+            end++;
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && !skip(',')) {
+                throw error("Expected ','");
+            }
+            values[i] = readInt();
+        }
+        return values;
+    }
+
+    @Override
+    public int readKeyword(String[] keywords) throws FileFormatException {
+        int end = tokenEnd();
+        int length = end - this.position;
+        for (int i = 0; i < keywords.length; i++) {
+            if (keywords[i].length() == length
+                    && this.line.regionMatches(this.position, keywords[i], 0,
+                    length)) {
+                this.position = end;
+                return i;
+            }
+        }
+        throw error("Unexpected value \""
+                + this.line.substring(this.position, end) + "\"");
+    }
+
+    /**
+     * Returns the index of the end of the token starting at the current
+     * position, ie. the index of the next delimiter or the end of the line.
+     */
+    private int tokenEnd() {
+        int end = this.position;
+        while (end < this.line.length()) {
+            char c = this.line.charAt(end);
+            if (c == ':' || c == ',' || c == '@') {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Creates an exception describing a problem on the current line.
+     */
+    private FileFormatException error(String message) {
+        return new FileFormatException("Line " + this.lineNumber + ": "
+                + message);
+    }
+}
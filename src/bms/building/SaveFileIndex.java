@@ -0,0 +1,359 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Records where each building's block of lines starts and ends within a
+ * text save file.
+ * <p>
+ * A save file is a concatenation of independent building blocks, so once
+ * their boundaries are known each block can be parsed on its own.
+ * <p>
+ * An index can be saved to an index file, so that later loads do not need
+ * to scan the save file. Index files are kept in a cache directory in the
+ * user's home directory, ".cache/bms/index", rather than next to the save
+ * files, and are named after the save file's name and a hash of its
+ * absolute path:
+ * <pre>
+ * BMSIDX:version:saveFileSize:saveFileLastModified
+ * numBuildings
+ * start:end:lineNumber:numFloors:buildingName
+ * </pre>
+ * with one line for each building. The size and modification time of the
+ * save file are used to detect an index which is out of date.
+ */
+class SaveFileIndex {
+
+    /**
+     * Suffix added to the name of a save file to get its index's name.
+     */
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * Directory holding the index files, relative to the user's home
+     * directory.
+     */
+    private static final String INDEX_DIRECTORY = ".cache/bms/index";
+
+    /**
+     * First field of the header line of an index file.
+     */
+    private static final String INDEX_MAGIC = "BMSIDX";
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * File offset at which each building starts, followed by the offset of
+     * the end of the last building.
+     */
+    private long[] offsets;
+
+    /**
+     * Line number of the first line (the name) of each building.
+     */
+    private int[] lineNumbers;
+
+    /**
+     * Number of floors in each building.
+     */
+    private int[] floorCounts;
+
+    /**
+     * Name of each building.
+     */
+    private String[] names;
+
+    /**
+     * Number of buildings in the index.
+     */
+    private int size;
+
+    /**
+     * Creates a new, empty index.
+     */
+    private SaveFileIndex() {
+        this.offsets = new long[16];
+        this.lineNumbers = new int[16];
+        this.floorCounts = new int[16];
+        this.names = new String[16];
+        this.size = 0;
+    }
+
+    /**
+     * Scans a save file to find the boundaries of every building in it.
+     * <p>
+     * Only the building names and the floor, room and sensor counts in each
+     * header line are read; all other values are skipped without being
+     * parsed, so the scan is much cheaper than fully parsing the file.
+     *
+     * @param channel channel of the save file to scan
+     * @return index of the buildings in the file, in file order
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if a count is missing or invalid, or the
+     * file ends part way through a building
+     */
+    static SaveFileIndex scan(FileChannel channel)
+            throws IOException, FileFormatException {
+        SaveFileIndex index = new SaveFileIndex();
+        MappedSaveFileSource source = new MappedSaveFileSource(channel, 0,
+                channel.size(), 1);
+
+        while (source.nextRecord()) {
+            long offset = source.getRecordOffset();
+            int lineNumber = source.getLineNumber();
+            String name = source.readText();
+            nextRecord(source, "number of floors");
+            int numFloors = readCount(source, 0);
+            index.add(offset, lineNumber, numFloors, name);
+            for (int i = 0; i < numFloors; i++) {
+                nextRecord(source, "floor");
+                int numRooms = readCount(source, 3);
+                for (int j = 0; j < numRooms; j++) {
+                    nextRecord(source, "room");
+                    int numSensors = readCount(source, 3);
+                    for (int k = 0; k < numSensors; k++) {
+                        nextRecord(source, "sensor");
+                    }
+                }
+            }
+        }
+        index.offsets[index.size] = channel.size();
+        return index;
+    }
+
+    /**
+     * Returns the number of buildings in the index.
+     *
+     * @return number of buildings
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the file offset at which the given building starts.
+     *
+     * @param building index of the building in file order
+     * @return offset of the building's name line
+     */
+    long getStart(int building) {
+        return this.offsets[building];
+    }
+
+    /**
+     * Returns the file offset at which the given building ends.
+     *
+     * @param building index of the building in file order
+     * @return offset just past the building's last line
+     */
+    long getEnd(int building) {
+        return this.offsets[building + 1];
+    }
+
+    /**
+     * Returns the line number on which the given building starts.
+     *
+     * @param building index of the building in file order
+     * @return line number of the building's name line
+     */
+    int getLineNumber(int building) {
+        return this.lineNumbers[building];
+    }
+
+    /**
+     * Returns the number of floors in the given building.
+     *
+     * @param building index of the building in file order
+     * @return number of floors in the building
+     */
+    int getFloorCount(int building) {
+        return this.floorCounts[building];
+    }
+
+    /**
+     * Returns the name of the given building.
+     *
+     * @param building index of the building in file order
+     * @return name of the building
+     */
+    String getName(int building) {
+        return this.names[building];
+    }
+
+    /**
+     * Returns the path of the index file of the given save file.
+     *
+     * @param saveFile path of the save file
+     * @return path of its index file
+     */
+    static Path indexPath(Path saveFile) {
+        Path absolute = saveFile.toAbsolutePath().normalize();
+        // Distinguishes save files with the same name in different places
+        UUID hash = UUID.nameUUIDFromBytes(
+                absolute.toString().getBytes(StandardCharsets.UTF_8));
+        return Paths.get(System.getProperty("user.home"), INDEX_DIRECTORY,
+                absolute.getFileName() + "-" + hash + INDEX_SUFFIX);
+    }
+
+    /**
+     * Deletes the index file of the given save file, if there is one and it
+     * can be deleted.
+     * <p>
+     * Since an index file is only a cache, and one which is out of date is
+     * detected and ignored when read, failing to delete it is not an error.
+     *
+     * @param saveFile path of the save file
+     */
+    static void delete(Path saveFile) {
+        try {
+            Files.deleteIfExists(indexPath(saveFile));
+        } catch (IOException e) {
+            // Left to be detected as out of date
+        }
+    }
+
+    /**
+     * Writes this index to an index file.
+     *
+     * @param indexFile path of the index file
+     * @param fileSize size of the save file which was indexed
+     * @param lastModified modification time of the save file, in
+     *                     milliseconds since the epoch
+     * @throws IOException if an IOException is encountered when writing
+     */
+    void write(Path indexFile, long fileSize, long lastModified)
+            throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile,
+                StandardCharsets.UTF_8)) {
+            writer.write(INDEX_MAGIC + ":" + INDEX_VERSION + ":" + fileSize
+                    + ":" + lastModified);
+            writer.newLine();
+            writer.write(String.valueOf(this.size));
+            writer.newLine();
+            for (int i = 0; i < this.size; i++) {
+                writer.write(getStart(i) + ":" + getEnd(i) + ":"
+                        + this.lineNumbers[i] + ":" + this.floorCounts[i] + ":"
+                        + this.names[i]);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Reads an index from an index file, if it exists and is up to date.
+     *
+     * @param indexFile path of the index file
+     * @param fileSize current size of the save file
+     * @param lastModified current modification time of the save file, in
+     *                     milliseconds since the epoch
+     * @return the index, or null if the index file does not exist, is
+     * invalid, or was written for a different version of the save file
+     * @throws IOException if an IOException is encountered when reading
+     */
+    static SaveFileIndex read(Path indexFile, long fileSize, long lastModified)
+            throws IOException {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile,
+                StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(INDEX_MAGIC + ":"
+                    + INDEX_VERSION + ":" + fileSize + ":" + lastModified)) {
+                return null;
+            }
+            String countLine = reader.readLine();
+            if (countLine == null) {
+                return null;
+            }
+            int count = Integer.parseInt(countLine);
+            SaveFileIndex index = new SaveFileIndex();
+            long end = 0;
+            for (int i = 0; i < count; i++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                String[] fields = line.split(":", 5);
+                if (fields.length < 5) {
+                    return null;
+                }
+                index.add(Long.parseLong(fields[0]),
+                        Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), fields[4]);
+                end = Long.parseLong(fields[1]);
+            }
+            index.offsets[index.size] = count == 0 ? fileSize : end;
+            return index;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a building starting at the given offset and line.
+     */
+    private void add(long offset, int lineNumber, int floorCount,
+            String name) {
+        if (this.size + 1 >= this.offsets.length) {
+            int capacity = this.offsets.length * 2;
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lineNumbers = Arrays.copyOf(this.lineNumbers, capacity);
+            this.floorCounts = Arrays.copyOf(this.floorCounts, capacity);
+            this.names = Arrays.copyOf(this.names, capacity);
+        }
+        this.offsets[this.size] = offset;
+        this.lineNumbers[this.size] = lineNumber;
+        this.floorCounts[this.size] = floorCount;
+        this.names[this.size] = name;
+        this.size++;
+    }
+
+    /**
+     * Advances to the next record, which must exist.
+     */
+    private static void nextRecord(SaveFileSource source, String expected)
+            throws IOException, FileFormatException {
+        if (!source.nextRecord()) {
+            throw new FileFormatException("Line "
+                    + (source.getLineNumber() + 1)
+                    + ": Unexpected end of file, expected " + expected);
+        }
+    }
+
+    /**
+     * Skips the given number of fields in the current record, then reads a
+     * non-negative count.
+     */
+    private static int readCount(SaveFileSource source, int fieldsToSkip)
+            throws FileFormatException {
+        for (int i = 0; i < fieldsToSkip; i++) {
+            source.skipValue();
+            if (!source.skip(':')) {
+                throw new FileFormatException("Line "
+                        + source.getLineNumber() + ": Expected ':'");
+            }
+        }
+        int count = source.readInt();
+        if (count < 0) {
+            throw new FileFormatException("Line " + source.getLineNumber()
+                    + ": Count must not be negative");
+        }
+        return count;
+    }
+}
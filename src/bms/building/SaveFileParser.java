@@ -0,0 +1,520 @@
+package bms.building;
+
+import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.DuplicateSensorException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.FloorTooSmallException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.exceptions.NoFloorBelowException;
+import bms.floor.Floor;
+import bms.hazardevaluation.HazardEvaluator;
+import bms.hazardevaluation.RuleBasedHazardEvaluator;
+import bms.hazardevaluation.WeightingBasedHazardEvaluator;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.CarbonDioxideSensor;
+import bms.sensors.HazardSensor;
+import bms.sensors.NoiseSensor;
+import bms.sensors.OccupancySensor;
+import bms.sensors.Sensor;
+import bms.sensors.TemperatureSensor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser which builds buildings, floors, rooms and sensors
+ * from the records of a save file in a single pass.
+ * <p>
+ * The save file format is a sequence of buildings, each of which is:
+ * <pre>
+ * buildingName
+ * numFloors
+ * floorNumber:width:length:numRooms[:roomNumber,roomNumber,...]
+ * roomNumber:roomType:area:numSensors[:hazardEvaluator]
+ * sensorType:readings[:...][@weighting]
+ * </pre>
+ * where each floor is followed by its rooms, and each room by its sensors.
+ */
+class SaveFileParser {
+
+    /**
+     * Sensor types which may appear in a save file, in the order used by
+     * {@link SaveFileParser#parseSensor()}.
+     */
+    private static final String[] SENSOR_TYPES = {
+            "CarbonDioxideSensor", "NoiseSensor", "OccupancySensor",
+            "TemperatureSensor"
+    };
+
+    /**
+     * Hazard evaluator types which may appear in a save file.
+     */
+    static final String[] EVALUATOR_TYPES = {
+            "RuleBased", "WeightingBased"
+    };
+
+    /**
+     * Kinds of entry which may appear in a save journal, in the order used by
+     * {@link SaveFileParser#parseJournal(List)}.
+     */
+    private static final String[] JOURNAL_ENTRIES = {
+            SaveJournal.BUILDING_ENTRY, SaveJournal.FLOOR_ENTRY,
+            SaveJournal.COMMIT_ENTRY
+    };
+
+    /**
+     * Names of all room types, indexed by ordinal.
+     */
+    private static final String[] ROOM_TYPES;
+
+    static {
+        RoomType[] roomTypes = RoomType.values();
+        ROOM_TYPES = new String[roomTypes.length];
+        for (int i = 0; i < roomTypes.length; i++) {
+            ROOM_TYPES[i] = roomTypes[i].name();
+        }
+    }
+
+    /**
+     * Source of records to parse.
+     */
+    private final SaveFileSource source;
+
+    /**
+     * Creates a new parser reading from the given source.
+     *
+     * @param source source of save file records
+     */
+    SaveFileParser(SaveFileSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Parses every building remaining in the source, until the end of file.
+     *
+     * @return list of buildings in the order they appear in the file
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    List<Building> parseBuildings() throws IOException, FileFormatException {
+        List<Building> buildings = new ArrayList<>();
+        try {
+            while (this.source.nextRecord()) {
+                buildings.add(parseBuilding());
+            }
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardBuildings(buildings);
+            throw e;
+        }
+        return buildings;
+    }
+
+    /**
+     * Parses a source which contains exactly one building, such as a single
+     * building block of a larger save file.
+     *
+     * @return the building in the source
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid, or the
+     * source does not contain exactly one building
+     */
+    Building parseSingleBuilding() throws IOException, FileFormatException {
+        nextRecord("building name");
+        Building building = parseBuilding();
+        if (this.source.nextRecord()) {
+            throw error("Expected end of building");
+        }
+        return building;
+    }
+
+    /**
+     * Parses a source which contains exactly one building, adding its floors
+     * to an existing building rather than creating a new one.
+     * <p>
+     * The building's name is skipped, since the building already has one.
+     *
+     * @param building building to add the floors to
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid, or the
+     * source does not contain exactly one building
+     * @see LazyBuilding
+     */
+    void parseSingleBuildingInto(Building building)
+            throws IOException, FileFormatException {
+        nextRecord("building name");
+        parseFloors(building);
+        if (this.source.nextRecord()) {
+            throw error("Expected end of building");
+        }
+    }
+
+    /**
+     * Parses every entry remaining in a save journal, applying each in turn
+     * to the given list of buildings.
+     * <p>
+     * A building entry replaces the building at its index in the list, or
+     * adds it if the index is one past the end of the list. A floor entry
+     * replaces the floor with the same number in the building at its index,
+     * or adds it to the top of that building. The timed items of replaced
+     * buildings and floors are deregistered.
+     *
+     * @param buildings buildings loaded from the save file the journal
+     *                  belongs to
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the journal format is invalid
+     * @see SaveJournal
+     */
+    void parseJournal(List<Building> buildings)
+            throws IOException, FileFormatException {
+        while (this.source.nextRecord()) {
+            if (!this.source.skip('@')) {
+                throw error("Expected a journal entry");
+            }
+            int entry = this.source.readKeyword(JOURNAL_ENTRIES);
+            if (entry == 2) {
+                endRecord();
+                continue;
+            }
+            expectField();
+            int index = this.source.readInt();
+            endRecord();
+            if (index < 0 || index > buildings.size()
+                    || (entry == 1 && index == buildings.size())) {
+                throw error("No building at index " + index);
+            }
+
+            if (entry == 0) {
+                nextRecord("building name");
+                Building building = parseBuilding();
+                if (index == buildings.size()) {
+                    buildings.add(building);
+                } else {
+                    BuildingInitialiser.discardBuildings(
+                            List.of(buildings.get(index)));
+                    buildings.set(index, building);
+                }
+            } else {
+                nextRecord("floor");
+                buildings.get(index).replaceFloor(parseFloor());
+            }
+        }
+    }
+
+    /**
+     * Parses a building, starting with its name on the current record.
+     *
+     * @return building with all of its floors, rooms and sensors
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    Building parseBuilding() throws IOException, FileFormatException {
+        String name = this.source.readText();
+        if (name.isBlank()) {
+            throw error("Building name must not be blank");
+        }
+        Building building = new Building(name);
+        try {
+            parseFloors(building);
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardBuildings(List.of(building));
+            throw e;
+        }
+        return building;
+    }
+
+    /**
+     * Parses the number of floors of a building on the next record, followed
+     * by each floor, and adds the floors to the given building.
+     *
+     * @param building building to which the floors are added
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    private void parseFloors(Building building)
+            throws IOException, FileFormatException {
+        nextRecord("number of floors");
+        int numFloors = this.source.readInt();
+        endRecord();
+        if (numFloors < 0) {
+            throw error("Number of floors must not be negative");
+        }
+
+        for (int i = 0; i < numFloors; i++) {
+            nextRecord("floor");
+            int floorLine = this.source.getLineNumber();
+            Floor floor = parseFloor();
+            try {
+                building.addFloor(floor);
+            } catch (IllegalArgumentException | DuplicateFloorException
+                    | NoFloorBelowException | FloorTooSmallException e) {
+                BuildingInitialiser.discardFloor(floor);
+                throw error(floorLine, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Parses a floor on the current record, followed by its rooms.
+     * <p>
+     * The floor is not added to any building, so the caller is responsible
+     * for checking that it fits in the building it is added to.
+     *
+     * @return floor with all of its rooms and its maintenance schedule
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    Floor parseFloor() throws IOException, FileFormatException {
+        int floorLine = this.source.getLineNumber();
+        int floorNumber = this.source.readInt();
+        expectField();
+        double width = this.source.readDouble();
+        expectField();
+        double length = this.source.readDouble();
+        expectField();
+        int numRooms = this.source.readInt();
+        int[] maintenanceOrder = null;
+        if (this.source.skip(':')) {
+            maintenanceOrder = this.source.readIntList();
+        }
+        endRecord();
+        if (numRooms < 0) {
+            throw error("Number of rooms must not be negative");
+        }
+
+        Floor floor = new Floor(floorNumber, width, length);
+        try {
+            parseRoomsAndSchedule(floor, floorLine, numRooms,
+                    maintenanceOrder);
+        } catch (IOException | FileFormatException | RuntimeException e) {
+            BuildingInitialiser.discardFloor(floor);
+            throw e;
+        }
+        return floor;
+    }
+
+    /**
+     * Parses the rooms of a floor, and creates its maintenance schedule if
+     * it has one.
+     */
+    private void parseRoomsAndSchedule(Floor floor, int floorLine,
+            int numRooms, int[] maintenanceOrder)
+            throws IOException, FileFormatException {
+        for (int i = 0; i < numRooms; i++) {
+            nextRecord("room");
+            parseRoom(floor);
+        }
+
+        if (maintenanceOrder != null) {
+            List<Room> roomOrder = new ArrayList<>(maintenanceOrder.length);
+            for (int roomNumber : maintenanceOrder) {
+                Room room = floor.getRoomByNumber(roomNumber);
+                if (room == null) {
+                    throw error(floorLine, "Maintenance schedule refers to "
+                            + "room " + roomNumber + " which is not on floor "
+                            + floor.getFloorNumber(), null);
+                }
+                roomOrder.add(room);
+            }
+            try {
+                floor.createMaintenanceSchedule(roomOrder);
+            } catch (IllegalArgumentException e) {
+                throw error(floorLine, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Parses a room on the current record, followed by its sensors, and adds
+     * it to the given floor.
+     *
+     * @param floor floor to which the room is added
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the file format is invalid
+     */
+    void parseRoom(Floor floor) throws IOException, FileFormatException {
+        int roomLine = this.source.getLineNumber();
+        int roomNumber = this.source.readInt();
+        expectField();
+        RoomType type = RoomType.values()[this.source.readKeyword(ROOM_TYPES)];
+        expectField();
+        double area = this.source.readDouble();
+        expectField();
+        int numSensors = this.source.readInt();
+        int evaluatorType = -1;
+        if (this.source.skip(':')) {
+            evaluatorType = this.source.readKeyword(EVALUATOR_TYPES);
+        }
+        endRecord();
+        if (numSensors < 0) {
+            throw error("Number of sensors must not be negative");
+        }
+
+        Room room = new Room(roomNumber, type, area);
+        try {
+            floor.addRoom(room);
+        } catch (IllegalArgumentException | DuplicateRoomException
+                | InsufficientSpaceException e) {
+            throw error(e.getMessage(), e);
+        }
+
+        boolean weighted = evaluatorType == 1;
+        Map<HazardSensor, Integer> weightings = new LinkedHashMap<>();
+        for (int i = 0; i < numSensors; i++) {
+            nextRecord("sensor");
+            Sensor sensor = parseSensor();
+            // Until the sensor is added to the room, it is only registered,
+            // so it must be discarded here if the rest of its record fails
+            boolean hasWeighting;
+            int weighting;
+            try {
+                hasWeighting = this.source.skip('@');
+                weighting = hasWeighting ? this.source.readInt() : 0;
+                endRecord();
+                room.addSensor(sensor);
+            } catch (FileFormatException e) {
+                BuildingInitialiser.discardSensor(sensor);
+                throw e;
+            } catch (DuplicateSensorException e) {
+                BuildingInitialiser.discardSensor(sensor);
+                throw error(e.getMessage(), e);
+            }
+            if (weighted != hasWeighting) {
+                throw error(weighted
+                        ? "Sensor is missing a weighting"
+                        : "Sensor weighting given without a weighting-based "
+                        + "hazard evaluator");
+            }
+            if (weighted) {
+                weightings.put((HazardSensor) sensor, weighting);
+            }
+        }
+
+        try {
+            room.setHazardEvaluator(
+                    createHazardEvaluator(evaluatorType, room, weightings));
+        } catch (IllegalArgumentException e) {
+            throw error(roomLine, "Sensor weightings must each be "
+                    + "between 0 and 100 and sum to 100", e);
+        }
+    }
+
+    /**
+     * Creates the hazard evaluator of a room whose sensors have all been
+     * loaded.
+     *
+     * @param evaluatorType index of the evaluator's type in
+     *                      {@link SaveFileParser#EVALUATOR_TYPES}, or -1 if the
+     *                      room has no hazard evaluator
+     * @param room room whose sensors are evaluated
+     * @param weightings weighting of each of the room's hazard sensors, if the
+     *                   evaluator is weighting-based
+     * @return the room's hazard evaluator, or null if it has none
+     * @throws IllegalArgumentException if the weightings are invalid
+     */
+    static HazardEvaluator createHazardEvaluator(int evaluatorType, Room room,
+            Map<HazardSensor, Integer> weightings)
+            throws IllegalArgumentException {
+        if (evaluatorType == 0) {
+            List<HazardSensor> hazardSensors = new ArrayList<>();
+            for (Sensor sensor : room.getSensors()) {
+                if (sensor instanceof HazardSensor) {
+                    hazardSensors.add((HazardSensor) sensor);
+                }
+            }
+            return new RuleBasedHazardEvaluator(hazardSensors);
+        } else if (evaluatorType == 1) {
+            return new WeightingBasedHazardEvaluator(weightings);
+        }
+        return null;
+    }
+
+    /**
+     * Parses a sensor from the current record, up to but not including any
+     * weighting.
+     *
+     * @return sensor described by the record
+     * @throws FileFormatException if the file format is invalid
+     */
+    Sensor parseSensor() throws FileFormatException {
+        int sensorType = this.source.readKeyword(SENSOR_TYPES);
+        expectField();
+        int[] readings = this.source.readIntList();
+        try {
+            switch (sensorType) {
+                case 0:
+                    expectField();
+                    int co2Frequency = this.source.readInt();
+                    expectField();
+                    int idealValue = this.source.readInt();
+                    expectField();
+                    int variationLimit = this.source.readInt();
+                    return new CarbonDioxideSensor(readings, co2Frequency,
+                            idealValue, variationLimit);
+                case 1:
+                    expectField();
+                    return new NoiseSensor(readings, this.source.readInt());
+                case 2:
+                    expectField();
+                    int occupancyFrequency = this.source.readInt();
+                    expectField();
+                    int capacity = this.source.readInt();
+                    return new OccupancySensor(readings, occupancyFrequency,
+                            capacity);
+                default:
+                    return new TemperatureSensor(readings);
+            }
+        } catch (IllegalArgumentException e) {
+            throw error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Advances to the next record, which must exist.
+     */
+    private void nextRecord(String expected)
+            throws IOException, FileFormatException {
+        if (!this.source.nextRecord()) {
+            throw new FileFormatException("Line "
+                    + (this.source.getLineNumber() + 1)
+                    + ": Unexpected end of file, expected " + expected);
+        }
+    }
+
+    /**
+     * Consumes the ':' separating two fields, which must be present.
+     */
+    private void expectField() throws FileFormatException {
+        if (!this.source.skip(':')) {
+            throw error("Expected ':'");
+        }
+    }
+
+    /**
+     * Checks that the whole of the current record has been read.
+     */
+    private void endRecord() throws FileFormatException {
+        if (!this.source.atEndOfRecord()) {
+            throw error("Unexpected trailing characters \""
+                    + this.source.readText() + "\"");
+        }
+    }
+
+    private FileFormatException error(String message) {
+        return error(this.source.getLineNumber(), message, null);
+    }
+
+    private FileFormatException error(String message, Throwable cause) {
+        return error(this.source.getLineNumber(), message, cause);
+    }
+
+    private static FileFormatException error(int lineNumber, String message,
+            Throwable cause) {
+        return new FileFormatException("Line " + lineNumber + ": " + message,
+                cause);
+    }
+}
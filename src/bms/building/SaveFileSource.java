@@ -0,0 +1,98 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+
+import java.io.IOException;
+
+/**
+ * A source of records read from a building save file, one line at a time.
+ * <p>
+ * Each record (line) is made up of fields separated by ':' characters.
+ * A field may be a single value, or a comma-separated list of integers.
+ * Sensor records may also end in an '@' followed by a weighting.
+ * <p>
+ * Values are read from the current record from left to right; delimiters
+ * must be consumed explicitly using {@link SaveFileSource#skip(char)}.
+ */
+interface SaveFileSource {
+
+    /**
+     * Advances to the next record in the save file.
+     *
+     * @return true if a record was read; false if the end of the file has
+     * been reached
+     * @throws IOException if an IOException is encountered when reading
+     */
+    boolean nextRecord() throws IOException;
+
+    /**
+     * Returns the line number of the current record, starting at 1.
+     *
+     * @return current line number; 0 if no record has been read yet
+     */
+    int getLineNumber();
+
+    /**
+     * Returns whether every character in the current record has been read.
+     *
+     * @return true if at the end of the current record
+     */
+    boolean atEndOfRecord();
+
+    /**
+     * Consumes the given delimiter if it is the next character in the
+     * current record.
+     *
+     * @param delimiter character to consume, eg. ':'
+     * @return true if the delimiter was consumed; false otherwise
+     */
+    boolean skip(char delimiter);
+
+    /**
+     * Skips over the value at the current position, up to the next delimiter
+     * or the end of the current record.
+     */
+    void skipValue();
+
+    /**
+     * Reads the remainder of the current record as text.
+     *
+     * @return remaining text of the current record
+     */
+    String readText();
+
+    /**
+     * Reads an integer value, ending at the next delimiter or at the end of
+     * the current record.
+     *
+     * @return integer value read
+     * @throws FileFormatException if the value is not a valid integer
+     */
+    int readInt() throws FileFormatException;
+
+    /**
+     * Reads a decimal value, ending at the next delimiter or at the end of
+     * the current record.
+     *
+     * @return decimal value read
+     * @throws FileFormatException if the value is not a valid number
+     */
+    double readDouble() throws FileFormatException;
+
+    /**
+     * Reads a non-empty comma-separated list of integers.
+     *
+     * @return array of the integers read, in order
+     * @throws FileFormatException if any value is not a valid integer
+     */
+    int[] readIntList() throws FileFormatException;
+
+    /**
+     * Reads a value which must exactly match one of the given keywords.
+     *
+     * @param keywords permitted values for this field
+     * @return index of the keyword that was read
+     * @throws FileFormatException if the value matches none of the keywords
+     */
+    int readKeyword(String[] keywords) throws FileFormatException;
+}
@@ -0,0 +1,404 @@
+package bms.building;
+
+import bms.building.BuildingSnapshot.FloorSnapshot;
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves buildings to a save file incrementally, by appending only the floors
+ * which have changed since the last save to a journal next to the file.
+ * <p>
+ * The journal of the save file "filename" is "filename.journal". It starts
+ * with a header identifying the save file it applies to, by its size and
+ * modification time, followed by a sequence of batches, one per save, each
+ * made up of entries in the save file format followed by a commit line:
+ * <pre>
+ * &#64;base:fileSize:lastModified
+ * &#64;building:buildingIndex
+ * (a building, with all of its floors, rooms and sensors)
+ * &#64;floor:buildingIndex
+ * (a floor, with all of its rooms and sensors)
+ * &#64;commit
+ * </pre>
+ * Loading a save file with {@link BuildingInitialiser} replays the entries of
+ * its journal over the buildings in the file. A batch which was only partly
+ * written, for example because of a crash, has no commit line and is ignored.
+ * A journal whose header does not match the save file was left behind by a
+ * crash after the save file was rewritten, so its entries are older than
+ * the file and it is ignored.
+ * <p>
+ * Once the journal holds as many floors as there are in all of the
+ * buildings, the next save compacts it, by rewriting the save file in full
+ * and deleting the journal. The cost of saving is therefore proportional to
+ * the number of floors changed, amortised over the saves between
+ * compactions. A new building whose name starts with '@' is never written
+ * to the journal, since its name would be read as an entry, so adding one
+ * rewrites the save file in full instead. Save files named with
+ * {@link BuildingInitialiser#BINARY_EXTENSION} are rewritten in the binary
+ * format, although their journal is always text.
+ */
+public class SaveJournal {
+
+    /**
+     * Journal header identifying the save file the journal applies to.
+     */
+    static final String BASE_ENTRY = "base";
+
+    /**
+     * Journal entry which adds or replaces a building.
+     */
+    static final String BUILDING_ENTRY = "building";
+
+    /**
+     * Journal entry which adds or replaces a floor of a building.
+     */
+    static final String FLOOR_ENTRY = "floor";
+
+    /**
+     * Journal entry which marks the end of a completely written batch.
+     */
+    static final String COMMIT_ENTRY = "commit";
+
+    /**
+     * Suffix added to the name of a save file to get its journal's name.
+     */
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Number of floors the journal may always hold before being compacted,
+     * however few floors there are in the buildings.
+     */
+    private static final int MIN_COMPACTION_FLOORS = 64;
+
+    /**
+     * Path of the save file.
+     */
+    private final String filename;
+
+    /**
+     * Path of the journal.
+     */
+    private final Path journal;
+
+    /**
+     * Number of buildings in the save file and its journal, or -1 if the
+     * contents of the save file are not known, in which case the next save
+     * rewrites it in full.
+     */
+    private int savedBuildings;
+
+    /**
+     * Number of floors written to the journal since it was last compacted.
+     */
+    private int journalFloors;
+
+    /**
+     * Length of the committed batches in the journal.
+     */
+    private long journalLength;
+
+    /**
+     * Lock held while writing to the save file or journal.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * A set of changes to be written to a save file, taken by
+     * {@link SaveJournal#prepare(List)}.
+     */
+    public static final class Update {
+        /**
+         * Snapshots of all buildings, if the save file is to be rewritten in
+         * full; otherwise null.
+         */
+        private final List<BuildingSnapshot> buildings;
+
+        /**
+         * Entries to append to the journal, if the save file is not being
+         * rewritten.
+         */
+        private final List<Entry> entries;
+
+        private Update(List<BuildingSnapshot> buildings, List<Entry> entries) {
+            this.buildings = buildings;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * A single entry to be written to the journal.
+     */
+    private static final class Entry {
+        private final int buildingIndex;
+        private final BuildingSnapshot building;
+        private final FloorSnapshot floor;
+
+        private Entry(int buildingIndex, BuildingSnapshot building,
+                FloorSnapshot floor) {
+            this.buildingIndex = buildingIndex;
+            this.building = building;
+            this.floor = floor;
+        }
+
+        private void encodeTo(Appendable out) throws IOException {
+            out.append('@')
+                    .append(this.building != null ? BUILDING_ENTRY : FLOOR_ENTRY)
+                    .append(':').append(String.valueOf(this.buildingIndex))
+                    .append(System.lineSeparator());
+            if (this.building != null) {
+                this.building.encodeTo(out);
+            } else {
+                this.floor.encodeTo(out);
+            }
+            out.append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Creates a new journal for saving to the given save file.
+     * <p>
+     * The first save made through the journal rewrites the save file in
+     * full, after which saves only append changes to the journal.
+     *
+     * @param filename path of the save file
+     */
+    public SaveJournal(String filename) {
+        this.filename = filename;
+        this.journal = journalPath(Paths.get(filename));
+        this.savedBuildings = -1;
+        this.journalFloors = 0;
+        this.journalLength = 0;
+    }
+
+    /**
+     * Saves the given buildings, appending only their unsaved changes to the
+     * journal, or rewriting the save file in full if the journal is due to be
+     * compacted.
+     * <p>
+     * Equivalent to calling {@link SaveJournal#write(Update)} with the
+     * result of {@link SaveJournal#prepare(List)}.
+     *
+     * @param buildings buildings to save
+     * @throws IOException if an IOException is encountered when writing
+     */
+    public void save(List<Building> buildings) throws IOException {
+        write(prepare(buildings));
+    }
+
+    /**
+     * Takes a snapshot of the unsaved changes to the given buildings, and
+     * marks them as saved.
+     * <p>
+     * The buildings must not be modified while this method is running. The
+     * changes are not written until the returned update is passed to
+     * {@link SaveJournal#write(Update)}.
+     *
+     * @param buildings buildings to save, in the same order as any previous
+     *                  save through this journal
+     * @return changes to be written
+     */
+    public synchronized Update prepare(List<Building> buildings) {
+        if (this.savedBuildings >= 0
+                && this.savedBuildings <= buildings.size()) {
+            List<Entry> entries = new ArrayList<>();
+            int totalFloors = 0;
+            int changedFloors = 0;
+            for (int i = 0; i < buildings.size(); i++) {
+                Building building = buildings.get(i);
+                // Counted without loading buildings which are loaded lazily
+                totalFloors += building.floorCount();
+                if (i >= this.savedBuildings) {
+                    if (building.getName().startsWith("@")) {
+                        // Its name would be read back as a journal entry
+                        entries = null;
+                        break;
+                    }
+                    entries.add(new Entry(i, new BuildingSnapshot(building),
+                            null));
+                    changedFloors += building.floorCount();
+                } else if (building.hasUnsavedChanges()) {
+                    for (Floor floor : building.getFloors()) {
+                        if (floor.hasUnsavedChanges()) {
+                            entries.add(new Entry(i, null,
+                                    new FloorSnapshot(floor)));
+                            changedFloors++;
+                        }
+                    }
+                }
+            }
+
+            if (entries != null && this.journalFloors + changedFloors
+                    < Math.max(MIN_COMPACTION_FLOORS, totalFloors)) {
+                for (Building building : buildings) {
+                    building.markSaved();
+                }
+                this.savedBuildings = buildings.size();
+                this.journalFloors += changedFloors;
+                return new Update(null, entries);
+            }
+        }
+
+        List<BuildingSnapshot> snapshot = BuildingSnapshot.of(buildings);
+        for (Building building : buildings) {
+            building.markSaved();
+        }
+        this.savedBuildings = buildings.size();
+        this.journalFloors = 0;
+        return new Update(snapshot, null);
+    }
+
+    /**
+     * Writes changes taken by {@link SaveJournal#prepare(List)} to the save
+     * file or its journal, and forces them to disk.
+     * <p>
+     * This method may be called on any thread, but updates must be written
+     * in the order they were prepared. If writing fails, the next save
+     * rewrites the save file in full, so that no changes are lost.
+     *
+     * @param update changes to write
+     * @throws IOException if an IOException is encountered when writing
+     */
+    public void write(Update update) throws IOException {
+        synchronized (this.writeLock) {
+            try {
+                if (update.buildings == null) {
+                    if (!update.entries.isEmpty()) {
+                        append(update.entries);
+                    }
+                } else if (BuildingInitialiser.isBinaryFilename(
+                        this.filename)) {
+                    BuildingInitialiser.saveBuildingsBinary(update.buildings,
+                            this.filename);
+                    this.journalLength = 0;
+                } else {
+                    BuildingInitialiser.saveBuildings(update.buildings,
+                            this.filename);
+                    this.journalLength = 0;
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    this.savedBuildings = -1;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of entries to the journal, followed by a commit line.
+     */
+    private void append(List<Entry> entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.journal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Discard any partly written batch left by a failed save
+            long start = Math.min(this.journalLength, channel.size());
+            channel.truncate(start);
+            channel.position(start);
+
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(
+                    channel, StandardCharsets.UTF_8));
+            if (start == 0) {
+                writer.write("@" + header(Paths.get(this.filename)));
+                writer.write(System.lineSeparator());
+            }
+            for (Entry entry : entries) {
+                entry.encodeTo(writer);
+            }
+            writer.write("@" + COMMIT_ENTRY);
+            writer.write(System.lineSeparator());
+            writer.flush();
+            channel.force(true);
+            this.journalLength = channel.size();
+        }
+    }
+
+    /**
+     * Returns the path of the journal of the given save file.
+     *
+     * @param saveFile path of the save file
+     * @return path of its journal
+     */
+    static Path journalPath(Path saveFile) {
+        return saveFile.resolveSibling(saveFile.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Returns the header of a journal applying to the given save file in its
+     * current state, without the leading '@'.
+     */
+    private static String header(Path saveFile) throws IOException {
+        return BASE_ENTRY + ":" + Files.size(saveFile) + ":"
+                + Files.getLastModifiedTime(saveFile).toMillis();
+    }
+
+    /**
+     * Replays the committed entries of the journal of the given save file, if
+     * it has one which applies to the file, over the buildings loaded from
+     * the file.
+     *
+     * @param buildings buildings loaded from the save file
+     * @param filename path of the save file
+     * @throws IOException if an IOException is encountered when reading
+     * @throws FileFormatException if the journal format is invalid
+     */
+    static void replay(List<Building> buildings, String filename)
+            throws IOException, FileFormatException {
+        Path saveFile = Paths.get(filename);
+        Path journal = journalPath(saveFile);
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journal,
+                StandardOpenOption.READ)) {
+            long length = committedLength(channel);
+            MappedSaveFileSource header = new MappedSaveFileSource(channel,
+                    0, length, 1);
+            if (!header.nextRecord() || !header.skip('@')
+                    || !header.readText().equals(header(saveFile))
+                    || !header.nextRecord()) {
+                // Empty, or left over from before the file was rewritten
+                return;
+            }
+            new SaveFileParser(new MappedSaveFileSource(channel,
+                    header.getRecordOffset(), length, 2))
+                    .parseJournal(buildings);
+        } catch (FileFormatException e) {
+            throw new FileFormatException(journal.getFileName() + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the length of the journal up to the end of its last commit
+     * line.
+     */
+    private static long committedLength(FileChannel channel)
+            throws IOException {
+        MappedSaveFileSource source = new MappedSaveFileSource(channel, 0,
+                channel.size(), 1);
+        long committed = 0;
+        boolean afterCommit = false;
+        while (source.nextRecord()) {
+            if (afterCommit) {
+                committed = source.getRecordOffset();
+                afterCommit = false;
+            }
+            if (source.skip('@') && source.readText().equals(COMMIT_ENTRY)) {
+                afterCommit = true;
+            }
+        }
+        return afterCommit ? channel.size() : committed;
+    }
+}
@@ -1,48 +1,80 @@
 package bms.display;
 
 import bms.building.Building;
+import bms.display.BuildingLayout.FloorLayout;
+import bms.display.BuildingLayout.RoomLayout;
 import bms.floor.Floor;
 import bms.room.Room;
+import bms.room.RoomEvent;
+import bms.room.RoomState;
 import bms.sensors.OccupancySensor;
 import bms.sensors.Sensor;
+import bms.sensors.SensorEvent;
+import bms.util.EventBus;
+import bms.util.ModelEvent;
 import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 /**
  * @ass2_given
  */
 public class BuildingCanvas extends Canvas {
 
-    private static class ClickableRegion {
-
-        private final double x;
-        private final double y;
-        private final double width;
-        private final double height;
-        public ClickableRegion(double x, double y, double width, double height) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
+    /**
+     * Smallest and largest scales the canvas can be zoomed to.
+     */
+    private static final double MIN_SCALE = 0.01;
+    private static final double MAX_SCALE = 4;
 
-        public boolean wasClicked(double clickX, double clickY) {
-            return clickX > this.x && clickX < this.x + this.width &&
-                    clickY > this.y && clickY < this.y + this.height;
-        }
+    /**
+     * Factor by which each step of the mouse wheel zooms the canvas.
+     */
+    private static final double ZOOM_FACTOR = 1.1;
 
-    }
+    /**
+     * Smallest scale at which room descriptions are drawn, below which their
+     * text is too small to read.
+     */
+    private static final double LABEL_MIN_SCALE = 0.5;
 
-    // Height of a floor in the building
-    private static final int FLOOR_HEIGHT = 110;
+    /**
+     * Smallest scale at which individual rooms are drawn, below which each
+     * floor is only a few pixels high.
+     */
+    private static final double ROOM_MIN_SCALE = 0.1;
+
+    /**
+     * Amount of detail drawn at a scale.
+     */
+    private enum Detail {
+        /**
+         * Rooms with their hazard levels and descriptions.
+         */
+        LABELS,
+
+        /**
+         * Rooms with their hazard levels, without descriptions.
+         */
+        HAZARDS,
+
+        /**
+         * Floors coloured by the most urgent state of their rooms.
+         */
+        FLOORS
+    }
 
     // Building drawn on this canvas
     private Building building;
@@ -50,10 +82,35 @@ public class BuildingCanvas extends Canvas {
     // View model
     private ViewModel viewModel;
 
-    // Mapping of clickable regions to floors
-    private Map<ClickableRegion, Floor> drawnFloors;
-    // Mapping of clickable regions to rooms
-    private Map<ClickableRegion, Room> drawnRooms;
+    // Positions of the floors and rooms, calculated when the layout changes
+    private BuildingLayout layout;
+
+    // Room containing each drawn sensor
+    private Map<Sensor, Room> sensorRooms;
+
+    // Whether floors or rooms have been added, moved or resized since the
+    // layout was calculated
+    private boolean layoutChanged;
+
+    // Rooms whose displayed state has changed since they were last drawn
+    private Set<Room> dirtyRooms;
+
+    // Description of each room, kept until its readings or state change
+    private Map<Room, String> labels;
+
+    // Font of the room descriptions
+    private Font labelFont;
+
+    // Subscriber to changes to the model, kept so it can be unsubscribed
+    private final Consumer<ModelEvent> subscriber;
+
+    // Selection when the canvas was last drawn
+    private Floor drawnSelectedFloor;
+    private Room drawnSelectedRoom;
+
+    // Image of the canvas reused to move its contents while panning
+    private WritableImage panImage;
+    private boolean panned;
 
     // Last pressed X and Y coordinates
     private double pressedX;
@@ -63,15 +120,25 @@ public class BuildingCanvas extends Canvas {
     private double xOffset;
     private double yOffset;
 
+    // Scale used to zoom the canvas
+    private double scale;
+
     /**
      * @ass2_given
      */
     public BuildingCanvas(ViewModel viewModel, Building building) {
-        this.drawnFloors = new HashMap<>();
-        this.drawnRooms = new HashMap<>();
+        this.sensorRooms = new IdentityHashMap<>();
+        this.dirtyRooms = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.labels = new IdentityHashMap<>();
+        this.labelFont = Font.font("monospace");
+        this.layoutChanged = true;
+        this.scale = 1;
         this.viewModel = viewModel;
         this.building = building;
 
+        this.subscriber = this::onModelChanged;
+        EventBus.getInstance().subscribe(ModelEvent.class, this.subscriber);
+
         widthProperty().addListener(e -> draw());
         heightProperty().addListener(e -> draw());
 
@@ -85,195 +152,443 @@ public class BuildingCanvas extends Canvas {
             if (mouseEvent.getButton() != MouseButton.SECONDARY) return;
             pan(mouseEvent.getX() - this.pressedX,
                     mouseEvent.getY() - this.pressedY);
-            draw();
             mouseEvent.consume();
             this.pressedX = mouseEvent.getX();
             this.pressedY = mouseEvent.getY();
         });
 
+        // Panning moves a lower resolution image of the canvas, so draw it
+        // properly once panning stops
+        setOnMouseReleased(mouseEvent -> {
+            if (this.panned) {
+                this.panned = false;
+                renderAll();
+            }
+        });
+
+        setOnScroll(scrollEvent -> {
+            if (scrollEvent.getDeltaY() != 0) {
+                zoom(scrollEvent.getDeltaY() > 0 ? ZOOM_FACTOR
+                        : 1 / ZOOM_FACTOR,
+                        scrollEvent.getX(), scrollEvent.getY());
+            }
+            scrollEvent.consume();
+        });
+
         setOnMouseClicked(event -> {
             if (event.getButton() != MouseButton.PRIMARY) {
                 return;
             }
-            double x = event.getX();
-            double y = event.getY();
-            Floor clickedFloor = null;
-            Room clickedRoom = null;
-            for (Map.Entry<ClickableRegion, Room> entry : drawnRooms.entrySet()) {
-                if (entry.getKey().wasClicked(x, y)) {
-                    clickedRoom = entry.getValue();
-                }
+            if (this.layout == null) {
+                return;
+            }
+            double x = (event.getX() - this.xOffset) / this.scale;
+            double y = (event.getY() - this.yOffset) / this.scale;
+            FloorLayout clickedFloor = this.layout.floorAt(x, y);
+            RoomLayout clickedRoom = this.layout.roomAt(x, y);
+            viewModel.setSelected(
+                    clickedFloor == null ? null : clickedFloor.floor,
+                    clickedRoom == null ? null : clickedRoom.room);
+        });
+    }
+
+    /**
+     * Records which parts of the canvas need redrawing because of the given
+     * change to the model.
+     */
+    private void onModelChanged(ModelEvent event) {
+        if (this.layoutChanged) {
+            // Everything will be laid out and drawn again anyway
+            return;
+        }
+        Object source = event.getSource();
+        if (event instanceof SensorEvent) {
+            Room room = this.sensorRooms.get(source);
+            if (room != null) {
+                this.dirtyRooms.add(room);
+                this.labels.remove(room);
             }
-            for (Map.Entry<ClickableRegion, Floor> entry : drawnFloors.entrySet()) {
-                if (entry.getKey().wasClicked(x, y)) {
-                    clickedFloor = entry.getValue();
+        } else if (event instanceof RoomEvent) {
+            Room room = (Room) source;
+            if (this.layout.getRoom(room) != null) {
+                this.dirtyRooms.add(room);
+                this.labels.remove(room);
+                for (Sensor sensor : room.getSensors()) {
+                    this.sensorRooms.put(sensor, room);
                 }
             }
-            viewModel.setSelected(clickedFloor, clickedRoom);
-        });
+        } else if (source == this.building || (source instanceof Floor
+                && this.layout.getFloor((Floor) source) != null)) {
+            this.layoutChanged = true;
+        }
+    }
+
+    /**
+     * Redraws the parts of the canvas which have changed since it was last
+     * drawn: the rooms whose readings, hazard level or state have changed,
+     * and the floors and rooms whose selection has changed. The whole canvas
+     * is only redrawn if floors or rooms have been added or resized.
+     */
+    public void drawIfChanged() {
+        if (this.layoutChanged) {
+            draw();
+            return;
+        }
+        Floor selectedFloor = this.viewModel.getSelectedFloor();
+        if (selectedFloor != this.drawnSelectedFloor) {
+            // The floor's background is behind all of its rooms
+            renderFloor(this.drawnSelectedFloor);
+            renderFloor(selectedFloor);
+            this.drawnSelectedFloor = selectedFloor;
+        }
+        Room selectedRoom = this.viewModel.getSelectedRoom();
+        if (selectedRoom != this.drawnSelectedRoom) {
+            if (this.drawnSelectedRoom != null) {
+                this.dirtyRooms.add(this.drawnSelectedRoom);
+            }
+            if (selectedRoom != null) {
+                this.dirtyRooms.add(selectedRoom);
+            }
+            this.drawnSelectedRoom = selectedRoom;
+        }
+        for (Room room : this.dirtyRooms) {
+            RoomLayout layout = this.layout.getRoom(room);
+            if (layout == null) {
+                continue;
+            }
+            if (detail() == Detail.FLOORS) {
+                // The room's state may change the colour of its whole floor
+                renderArea(layout.floor.x, layout.floor.y,
+                        layout.floor.width, BuildingLayout.FLOOR_HEIGHT);
+            } else {
+                renderArea(layout.slotX, layout.floor.y, layout.slotWidth,
+                        BuildingLayout.FLOOR_HEIGHT);
+            }
+        }
+        this.dirtyRooms.clear();
     }
 
     /**
      * @ass2_given
      */
     public void draw() {
-        // Clear the mapping of clickable regions to floors and rooms
-        this.drawnFloors.clear();
-        this.drawnRooms.clear();
-
-        GraphicsContext gc = getGraphicsContext2D();
+        layout();
+        renderAll();
+    }
 
-        // Clear the canvas
-        gc.clearRect(0, 0, this.getWidth(), this.getHeight());
+    /**
+     * Calculates the position of each floor and room of the building.
+     */
+    private void layout() {
+        this.layout = new BuildingLayout(this.building, this.getWidth(),
+                this.getHeight());
+        this.layoutChanged = false;
+        this.sensorRooms.clear();
+        this.labels.clear();
+        for (FloorLayout floor : this.layout.getFloors()) {
+            for (RoomLayout room : floor.rooms) {
+                for (Sensor sensor : room.room.getSensors()) {
+                    this.sensorRooms.put(sensor, room.room);
+                }
+            }
+        }
+    }
 
-        // Draw width of the smallest room, must be large enough to fit text
-        // inside room
-        final double minRoomDrawWidth = 110;
-        final double padding = 20;
-        double startX = padding;
-        double startY = this.getHeight() - padding;
-        final double roomPadding = 5;
-        double x, y;
+    /**
+     * Redraws the whole canvas.
+     */
+    private void renderAll() {
+        this.dirtyRooms.clear();
+        this.drawnSelectedFloor = this.viewModel.getSelectedFloor();
+        this.drawnSelectedRoom = this.viewModel.getSelectedRoom();
+        render(0, 0, this.getWidth(), this.getHeight());
+    }
 
-        int numFloors = building.getFloors().size();
-        if (numFloors == 0) {
-            return;
+    /**
+     * Redraws the given floor and its rooms, if it is drawn.
+     */
+    private void renderFloor(Floor floor) {
+        FloorLayout layout = floor == null ? null
+                : this.layout.getFloor(floor);
+        if (layout != null) {
+            renderArea(layout.x, layout.y, layout.width,
+                    BuildingLayout.FLOOR_HEIGHT);
         }
+    }
 
-        // Area of the smallest room in the building
-        double minRoomArea = Double.MAX_VALUE;
-
-        // Area of the floor containing the smallest room
-        // If there are no rooms in the building at all, this value will remain
-        // at 0 but is unused
-        double minFloorArea = 0;
-        boolean buildingHasRooms = false;
-        // TODO extract calculation?
-        for (Floor floor : building.getFloors()) {
-            for (Room room : floor.getRooms()) {
-                buildingHasRooms = true;
-                if (room.getArea() < minRoomArea) {
-                    minRoomArea = room.getArea();
-                    minFloorArea = floor.calculateArea();
-                }
+    /**
+     * Redraws the part of the canvas showing the given rectangle of the
+     * layout, including the borders drawn over its edges.
+     */
+    private void renderArea(double x, double y, double width,
+            double height) {
+        // Borders are a pixel wide before zooming, plus a pixel of
+        // antialiasing after
+        double margin = this.scale + 1;
+        render(this.xOffset + x * this.scale - margin,
+                this.yOffset + y * this.scale - margin,
+                width * this.scale + 2 * margin,
+                height * this.scale + 2 * margin);
+    }
+
+    /**
+     * Redraws the given rectangle of the canvas.
+     * <p>
+     * Every floor and room overlapping the rectangle is drawn in the same
+     * order as when drawing the whole canvas, but clipped to the rectangle,
+     * so the result is the same as redrawing the whole canvas. Floors and
+     * rooms outside the rectangle, including those panned out of view, are
+     * skipped without being visited.
+     */
+    private void render(double x, double y, double width, double height) {
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.save();
+        gc.beginPath();
+        gc.rect(x, y, width, height);
+        gc.clip();
+        gc.clearRect(x, y, width, height);
+
+        // Draw at the positions in the layout, panned and zoomed
+        gc.translate(this.xOffset, this.yOffset);
+        gc.scale(this.scale, this.scale);
+        double left = (x - this.xOffset) / this.scale;
+        double top = (y - this.yOffset) / this.scale;
+        double right = left + width / this.scale;
+        double bottom = top + height / this.scale;
+        Detail detail = detail();
+        for (FloorLayout floor : this.layout.floorsBetween(top, bottom)) {
+            // Includes the floor's border, which is drawn over its edges
+            if (floor.x - 1 >= right || floor.x + floor.width + 1 <= left
+                    || floor.y - 1 >= bottom
+                    || floor.y + BuildingLayout.FLOOR_HEIGHT + 1 <= top) {
+                continue;
+            }
+            drawFloor(gc, floor, detail);
+            if (detail == Detail.FLOORS) {
+                continue;
+            }
+            for (RoomLayout room
+                    : this.layout.roomsBetween(floor, left, right)) {
+                drawRoom(gc, room, detail);
             }
         }
-        final double minFloorDrawWidth = minRoomDrawWidth * minFloorArea / minRoomArea;
-
-        double firstFloorArea = building.getFloorByNumber(1).calculateArea();
-        // Draw each floor
-        for (int i = 0; i < numFloors; ++i) {
-            Floor floor = building.getFloors().get(i);
-            double floorArea = floor.calculateArea();
-            double relativeFloorArea = floorArea / firstFloorArea;
-            double floorOriginX = startX;
-            double floorOriginY = startY - (i + 1) * FLOOR_HEIGHT;
-            double floorDrawWidth;
-            if (buildingHasRooms) {
-                floorDrawWidth = Math.max((floorArea / minFloorArea) * minFloorDrawWidth,
-                        (this.getWidth() - 2 * padding) * relativeFloorArea);
-            } else {
-                floorDrawWidth = (this.getWidth() - 2 * padding) * relativeFloorArea;
+        gc.restore();
+    }
+
+    /**
+     * Returns the amount of detail to draw at the current scale.
+     */
+    private Detail detail() {
+        if (this.scale >= LABEL_MIN_SCALE) {
+            return Detail.LABELS;
+        }
+        if (this.scale >= ROOM_MIN_SCALE) {
+            return Detail.HAZARDS;
+        }
+        return Detail.FLOORS;
+    }
+
+    /**
+     * Draws the background and border of the given floor.
+     */
+    private void drawFloor(GraphicsContext gc, FloorLayout layout,
+            Detail detail) {
+        gc.setStroke(Color.BLACK);
+        gc.strokeRect(layout.x, layout.y, layout.width,
+                BuildingLayout.FLOOR_HEIGHT);
+        RoomState state = detail == Detail.FLOORS ? mostUrgentState(layout)
+                : RoomState.OPEN;
+        if (state == RoomState.EVACUATE) {
+            gc.setFill(Color.RED);
+        } else if (state == RoomState.MAINTENANCE) {
+            gc.setFill(Color.ORANGE);
+        } else if (layout.floor.equals(viewModel.getSelectedFloor())) {
+            gc.setFill(Color.LIGHTPINK);
+        } else {
+            gc.setFill(Color.LIGHTGRAY);
+        }
+        gc.fillRect(layout.x, layout.y, layout.width,
+                BuildingLayout.FLOOR_HEIGHT);
+    }
+
+    /**
+     * Returns the state of the rooms of the given floor which most needs
+     * attention: evacuation, then maintenance, otherwise open.
+     */
+    private RoomState mostUrgentState(FloorLayout layout) {
+        RoomState result = RoomState.OPEN;
+        for (RoomLayout room : layout.rooms) {
+            RoomState state = room.room.evaluateRoomState();
+            if (state == RoomState.EVACUATE) {
+                return state;
+            }
+            if (state == RoomState.MAINTENANCE) {
+                result = state;
             }
+        }
+        return result;
+    }
 
+    /**
+     * Draws the given room, with its description if there is enough detail.
+     */
+    private void drawRoom(GraphicsContext gc, RoomLayout layout,
+            Detail detail) {
+        Room room = layout.room;
+        double x = layout.x;
+        double y = layout.y;
+        double width = layout.width;
+        double height = layout.height;
+
+        gc.setStroke(Color.BLUE);
+        gc.strokeRect(x, y, width, height);
+        if (room.equals(viewModel.getSelectedRoom())) {
+            gc.setFill(Color.LIGHTYELLOW);
+        } else {
+            gc.setFill(Color.WHITE);
+        }
+        gc.fillRect(x, y, width, height);
+
+        // Draw a coloured rectangle to represent the hazard level
+        if (room.getHazardEvaluator() != null) {
+            double hazardPct = room.getHazardEvaluator()
+                    .evaluateHazardLevel() / 100.0;
+            double hazardHeight = hazardPct * height;
+            gc.setFill(Color.ORANGE);
+            gc.fillRect(x, y + height - hazardHeight, 5, hazardHeight);
             gc.setStroke(Color.BLACK);
-            x = this.xOffset + floorOriginX;
-            y = this.yOffset + floorOriginY;
-            gc.strokeRect(x, y, floorDrawWidth, FLOOR_HEIGHT);
-            if (floor.equals(viewModel.getSelectedFloor())) {
-                gc.setFill(Color.LIGHTPINK);
-            } else {
-                gc.setFill(Color.LIGHTGRAY);
-            }
-            gc.fillRect(x, y, floorDrawWidth, FLOOR_HEIGHT);
-
-            this.drawnFloors.put(new ClickableRegion(
-                    x, y, floorDrawWidth, FLOOR_HEIGHT), floor);
-
-            // Draw each room on the current floor
-            int numRooms = floor.getRooms().size();
-            double roomOriginX = floorOriginX;
-            for (int j = 0; j < numRooms; ++j) {
-                Room room = floor.getRooms().get(j);
-                double roomArea = room.getArea();
-                double roomDrawWidth = roomArea / floor.calculateArea() * floorDrawWidth;
-
-                gc.setStroke(Color.BLUE);
-                x = this.xOffset + roomOriginX + roomPadding;
-                y = this.yOffset + floorOriginY + roomPadding;
-                gc.strokeRect(x, y,
-                        roomDrawWidth - 2 * roomPadding,
-                        FLOOR_HEIGHT - 2 * roomPadding);
-                if (room.equals(viewModel.getSelectedRoom())) {
-                    gc.setFill(Color.LIGHTYELLOW);
-                } else {
-                    gc.setFill(Color.WHITE);
-                }
-                gc.fillRect(x, y,
-                        roomDrawWidth - 2 * roomPadding,
-                        FLOOR_HEIGHT - 2 * roomPadding);
-
-                this.drawnRooms.put(new ClickableRegion(x, y,
-                        roomDrawWidth - 2 * roomPadding,
-                        FLOOR_HEIGHT - 2 * roomPadding), room);
-
-                // Draw a coloured rectangle to represent the hazard level
-                if (room.getHazardEvaluator() != null) {
-                    double hazardPct = room.getHazardEvaluator()
-                            .evaluateHazardLevel() / 100.0;
-                    double fullHeight = FLOOR_HEIGHT - 2 * roomPadding;
-                    double height = hazardPct * fullHeight;
-                    gc.setFill(Color.ORANGE);
-                    gc.fillRect(x, y + fullHeight - height, 5, height);
-                    gc.setStroke(Color.BLACK);
-
-                    gc.strokeLine(x + 5.5, y, x + 5.5, y + FLOOR_HEIGHT - 2 * roomPadding);
-                }
 
-                StringJoiner joiner = new StringJoiner(System.lineSeparator());
-                joiner.add("Room #" + room.getRoomNumber());
-                joiner.add(room.getType().toString());
-                joiner.add(room.evaluateRoomState().toString());
-                Sensor tempSensor = room.getSensor("TemperatureSensor");
-                if (tempSensor != null) {
-                    joiner.add(String.format("%d°C",
-                            tempSensor.getCurrentReading()));
-                }
-                Sensor noiseSensor = room.getSensor("NoiseSensor");
-                if (noiseSensor != null) {
-                    joiner.add(String.format("%ddB",
-                            noiseSensor.getCurrentReading()));
-                }
-                Sensor co2Sensor = room.getSensor("CarbonDioxideSensor");
-                if (co2Sensor != null) {
-                    joiner.add(String.format("%dppm",
-                            co2Sensor.getCurrentReading()));
-                }
-                OccupancySensor occupancySensor = (OccupancySensor) room.getSensor("OccupancySensor");
-                if (occupancySensor != null) {
-                    joiner.add(String.format("%d/%d",
-                            occupancySensor.getCurrentReading(),
-                            occupancySensor.getCapacity()));
-                }
-                String roomDescription = joiner.toString();
+            gc.strokeLine(x + 5.5, y, x + 5.5, y + height);
+        }
 
-                gc.setFill(Color.BLACK);
-                gc.setTextBaseline(VPos.TOP);
-                x = this.xOffset + roomOriginX + roomPadding + 2
-                        + (room.getHazardEvaluator() == null ? 0 : 6);
-                y = this.yOffset + floorOriginY + roomPadding + 2;
-                gc.setFont(Font.font("monospace"));
-                gc.fillText(roomDescription, x, y);
+        if (detail == Detail.LABELS) {
+            drawLabel(gc, layout);
+        }
+    }
 
-                roomOriginX += roomDrawWidth;
-            }
+    /**
+     * Draws the description of the given room, clipped to its slot of the
+     * floor so that it does not spill over neighbouring rooms.
+     */
+    private void drawLabel(GraphicsContext gc, RoomLayout layout) {
+        Room room = layout.room;
+        gc.save();
+        gc.beginPath();
+        gc.rect(layout.slotX, layout.floor.y, layout.slotWidth,
+                BuildingLayout.FLOOR_HEIGHT);
+        gc.clip();
+
+        // Only described again once its readings or state have changed,
+        // which are all published as events
+        String roomDescription = this.labels.get(room);
+        if (roomDescription == null) {
+            roomDescription = describe(room);
+            this.labels.put(room, roomDescription);
         }
+
+        gc.setFill(Color.BLACK);
+        gc.setTextBaseline(VPos.TOP);
+        gc.setFont(this.labelFont);
+        gc.fillText(roomDescription, layout.x + 2
+                + (room.getHazardEvaluator() == null ? 0 : 6), layout.y + 2);
+
+        gc.restore();
     }
 
+    /**
+     * Returns the description of the given room: its number, type and state,
+     * followed by the readings of its sensors.
+     */
+    private static String describe(Room room) {
+        StringJoiner joiner = new StringJoiner(System.lineSeparator());
+        joiner.add("Room #" + room.getRoomNumber());
+        joiner.add(room.getType().toString());
+        joiner.add(room.evaluateRoomState().toString());
+        Sensor tempSensor = room.getSensor("TemperatureSensor");
+        if (tempSensor != null) {
+            joiner.add(String.format("%d°C",
+                    tempSensor.getCurrentReading()));
+        }
+        Sensor noiseSensor = room.getSensor("NoiseSensor");
+        if (noiseSensor != null) {
+            joiner.add(String.format("%ddB",
+                    noiseSensor.getCurrentReading()));
+        }
+        Sensor co2Sensor = room.getSensor("CarbonDioxideSensor");
+        if (co2Sensor != null) {
+            joiner.add(String.format("%dppm",
+                    co2Sensor.getCurrentReading()));
+        }
+        OccupancySensor occupancySensor =
+                (OccupancySensor) room.getSensor("OccupancySensor");
+        if (occupancySensor != null) {
+            joiner.add(String.format("%d/%d",
+                    occupancySensor.getCurrentReading(),
+                    occupancySensor.getCapacity()));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Pans the canvas by the given amounts, moving what is already drawn and
+     * only drawing the strips which come into view.
+     */
     private void pan(double deltaX, double deltaY) {
         this.xOffset += deltaX;
         this.yOffset += deltaY;
-        this.draw();
+        double width = this.getWidth();
+        double height = this.getHeight();
+        if (this.layoutChanged) {
+            draw();
+            return;
+        }
+        if (Math.abs(deltaX) >= width || Math.abs(deltaY) >= height) {
+            renderAll();
+            return;
+        }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        this.panImage = snapshot(parameters, this.panImage);
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        gc.drawImage(this.panImage, deltaX, deltaY);
+        if (deltaX > 0) {
+            render(0, 0, deltaX, height);
+        } else if (deltaX < 0) {
+            render(width + deltaX, 0, -deltaX, height);
+        }
+        if (deltaY > 0) {
+            render(0, 0, width, deltaY);
+        } else if (deltaY < 0) {
+            render(0, height + deltaY, width, -deltaY);
+        }
+        this.panned = true;
+    }
+
+    /**
+     * Zooms the canvas by the given factor, keeping the given point of the
+     * canvas in place.
+     */
+    private void zoom(double factor, double x, double y) {
+        double scale = Math.max(MIN_SCALE,
+                Math.min(MAX_SCALE, this.scale * factor));
+        this.xOffset = x - (x - this.xOffset) * scale / this.scale;
+        this.yOffset = y - (y - this.yOffset) * scale / this.scale;
+        this.scale = scale;
+        if (this.layoutChanged) {
+            draw();
+        } else {
+            renderAll();
+        }
+    }
+
+    /**
+     * Stops this canvas from being told about changes to the model, so that
+     * it and its building can be garbage collected once it is no longer
+     * shown. The canvas must not be drawn afterwards.
+     */
+    public void dispose() {
+        EventBus.getInstance().unsubscribe(ModelEvent.class, this.subscriber);
     }
 
     /**
@@ -282,7 +597,8 @@ public class BuildingCanvas extends Canvas {
     public void resetView() {
         this.xOffset = 0;
         this.yOffset = 0;
-        this.draw();
+        this.scale = 1;
+        this.renderAll();
     }
 
     /**
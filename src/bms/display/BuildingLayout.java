@@ -0,0 +1,373 @@
+package bms.display;
+
+import bms.building.Building;
+import bms.floor.Floor;
+import bms.room.Room;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions of the floors and rooms of a building on a canvas, before
+ * panning and zooming.
+ * <p>
+ * Floors are stacked from the bottom of the canvas, with the ground floor
+ * lowest, and the rooms of each floor are placed side by side in order, each
+ * given a share of the floor's width in proportion to its area. The layout
+ * only depends on the building's floors and rooms and the canvas size, so it
+ * is calculated once and reused until one of those changes.
+ * <p>
+ * Since the floors are rows of equal height and the rooms of a floor are
+ * ordered from left to right, the floor or room at a point is found in
+ * logarithmic time, without checking every floor and room.
+ */
+final class BuildingLayout {
+
+    /**
+     * Height of a floor, in pixels.
+     */
+    static final double FLOOR_HEIGHT = 110;
+
+    /**
+     * Space between a floor's edges and the edges of its rooms, in pixels.
+     */
+    static final double ROOM_PADDING = 5;
+
+    /**
+     * Draw width of the smallest room, which must be large enough to fit
+     * the room's description.
+     */
+    private static final double MIN_ROOM_DRAW_WIDTH = 110;
+
+    /**
+     * Space between the edges of the canvas and the building, in pixels.
+     */
+    private static final double PADDING = 20;
+
+    /**
+     * Position of a floor, and of its rooms.
+     */
+    static final class FloorLayout {
+
+        /**
+         * Floor which is laid out.
+         */
+        final Floor floor;
+
+        /**
+         * Left edge of the floor.
+         */
+        final double x;
+
+        /**
+         * Top edge of the floor.
+         */
+        final double y;
+
+        /**
+         * Width of the floor.
+         */
+        final double width;
+
+        /**
+         * Layouts of the floor's rooms, from left to right.
+         */
+        final List<RoomLayout> rooms = new ArrayList<>();
+
+        private FloorLayout(Floor floor, double x, double y, double width) {
+            this.floor = floor;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+        }
+    }
+
+    /**
+     * Position of a room, which is drawn inset by the room padding from the
+     * slot of its floor that it occupies.
+     */
+    static final class RoomLayout {
+
+        /**
+         * Room which is laid out.
+         */
+        final Room room;
+
+        /**
+         * Layout of the room's floor.
+         */
+        final FloorLayout floor;
+
+        /**
+         * Left edge of the room's slot, which spans the floor's height.
+         */
+        final double slotX;
+
+        /**
+         * Width of the room's slot.
+         */
+        final double slotWidth;
+
+        /**
+         * Left edge of the room.
+         */
+        final double x;
+
+        /**
+         * Top edge of the room.
+         */
+        final double y;
+
+        /**
+         * Width of the room.
+         */
+        final double width;
+
+        /**
+         * Height of the room.
+         */
+        final double height;
+
+        private RoomLayout(Room room, FloorLayout floor, double slotX,
+                double slotWidth) {
+            this.room = room;
+            this.floor = floor;
+            this.slotX = slotX;
+            this.slotWidth = slotWidth;
+            this.x = slotX + ROOM_PADDING;
+            this.y = floor.y + ROOM_PADDING;
+            this.width = slotWidth - 2 * ROOM_PADDING;
+            this.height = FLOOR_HEIGHT - 2 * ROOM_PADDING;
+        }
+    }
+
+    /**
+     * Layouts of the floors, from the ground floor up.
+     */
+    private final List<FloorLayout> floors = new ArrayList<>();
+
+    /**
+     * Layout of each floor.
+     */
+    private final Map<Floor, FloorLayout> floorLayouts =
+            new IdentityHashMap<>();
+
+    /**
+     * Layout of each room.
+     */
+    private final Map<Room, RoomLayout> roomLayouts = new IdentityHashMap<>();
+
+    /**
+     * Lays out the given building on a canvas of the given size.
+     *
+     * @param building building to lay out
+     * @param canvasWidth width of the canvas
+     * @param canvasHeight height of the canvas
+     */
+    BuildingLayout(Building building, double canvasWidth,
+            double canvasHeight) {
+        List<Floor> floors = building.getFloors();
+        if (floors.isEmpty()) {
+            return;
+        }
+        List<List<Room>> floorRooms = new ArrayList<>(floors.size());
+        double[] floorAreas = new double[floors.size()];
+
+        // Area of the smallest room in the building, and of the floor
+        // containing it, which stays 0 but unused if there are no rooms
+        double minRoomArea = Double.MAX_VALUE;
+        double minFloorArea = 0;
+        boolean buildingHasRooms = false;
+        for (int i = 0; i < floors.size(); i++) {
+            List<Room> rooms = floors.get(i).getRooms();
+            floorRooms.add(rooms);
+            floorAreas[i] = floors.get(i).calculateArea();
+            for (Room room : rooms) {
+                buildingHasRooms = true;
+                if (room.getArea() < minRoomArea) {
+                    minRoomArea = room.getArea();
+                    minFloorArea = floorAreas[i];
+                }
+            }
+        }
+        double minFloorDrawWidth = MIN_ROOM_DRAW_WIDTH * minFloorArea
+                / minRoomArea;
+
+        Floor firstFloor = building.getFloorByNumber(1);
+        double firstFloorArea = firstFloor.calculateArea();
+        double startY = canvasHeight - PADDING;
+        for (int i = 0; i < floors.size(); i++) {
+            double relativeFloorArea = floorAreas[i] / firstFloorArea;
+            double floorDrawWidth = (canvasWidth - 2 * PADDING)
+                    * relativeFloorArea;
+            if (buildingHasRooms) {
+                floorDrawWidth = Math.max(floorDrawWidth,
+                        floorAreas[i] / minFloorArea * minFloorDrawWidth);
+            }
+            FloorLayout floorLayout = new FloorLayout(floors.get(i), PADDING,
+                    startY - (i + 1) * FLOOR_HEIGHT, floorDrawWidth);
+            this.floors.add(floorLayout);
+            this.floorLayouts.put(floorLayout.floor, floorLayout);
+
+            double roomOriginX = PADDING;
+            for (Room room : floorRooms.get(i)) {
+                double roomDrawWidth = room.getArea() / floorAreas[i]
+                        * floorDrawWidth;
+                RoomLayout roomLayout = new RoomLayout(room, floorLayout,
+                        roomOriginX, roomDrawWidth);
+                floorLayout.rooms.add(roomLayout);
+                this.roomLayouts.put(room, roomLayout);
+                roomOriginX += roomDrawWidth;
+            }
+        }
+    }
+
+    /**
+     * Returns the layouts of the floors, from the ground floor up.
+     *
+     * @return unmodifiable list of floor layouts
+     */
+    List<FloorLayout> getFloors() {
+        return Collections.unmodifiableList(this.floors);
+    }
+
+    /**
+     * Returns the layouts of the floors which may overlap the given range of
+     * vertical positions, from the ground floor up.
+     * <p>
+     * The floors are found from their rows rather than by checking every
+     * floor, and may include a floor either side of those overlapping the
+     * range, so callers still need to check each floor's position.
+     *
+     * @param top top of the range
+     * @param bottom bottom of the range
+     * @return unmodifiable list of floor layouts
+     */
+    List<FloorLayout> floorsBetween(double top, double bottom) {
+        if (this.floors.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double groundBottom = this.floors.get(0).y + FLOOR_HEIGHT;
+        double lowest = Math.floor((groundBottom - bottom) / FLOOR_HEIGHT) - 1;
+        double highest = Math.floor((groundBottom - top) / FLOOR_HEIGHT) + 1;
+        int from = (int) Math.max(0, lowest);
+        int to = (int) Math.min(this.floors.size(), highest + 1);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(this.floors.subList(from, to));
+    }
+
+    /**
+     * Returns the layouts of the rooms of the given floor whose slots overlap
+     * the given range of horizontal positions, from left to right.
+     *
+     * @param floor layout of the floor
+     * @param left left of the range
+     * @param right right of the range
+     * @return unmodifiable list of room layouts
+     */
+    List<RoomLayout> roomsBetween(FloorLayout floor, double left,
+            double right) {
+        // First room whose slot ends after the left of the range
+        List<RoomLayout> rooms = floor.rooms;
+        int low = 0;
+        int high = rooms.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            RoomLayout room = rooms.get(middle);
+            if (room.slotX + room.slotWidth <= left) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < rooms.size() && rooms.get(end).slotX < right) {
+            end++;
+        }
+        return Collections.unmodifiableList(rooms.subList(low, end));
+    }
+
+    /**
+     * Returns the layout of the floor drawn at the given point, before
+     * panning and zooming, excluding its edges.
+     *
+     * @param x horizontal position of the point
+     * @param y vertical position of the point
+     * @return layout of the floor at the point, or null if there is none
+     */
+    FloorLayout floorAt(double x, double y) {
+        if (this.floors.isEmpty()) {
+            return null;
+        }
+        // Floors are stacked upwards from the bottom of the ground floor
+        double bottom = this.floors.get(0).y + FLOOR_HEIGHT;
+        double row = Math.floor((bottom - y) / FLOOR_HEIGHT);
+        if (row < 0 || row >= this.floors.size()) {
+            return null;
+        }
+        FloorLayout floor = this.floors.get((int) row);
+        if (x > floor.x && x < floor.x + floor.width
+                && y > floor.y && y < floor.y + FLOOR_HEIGHT) {
+            return floor;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the layout of the room drawn at the given point, before
+     * panning and zooming, excluding its edges.
+     *
+     * @param x horizontal position of the point
+     * @param y vertical position of the point
+     * @return layout of the room at the point, or null if there is none
+     */
+    RoomLayout roomAt(double x, double y) {
+        FloorLayout floor = floorAt(x, y);
+        if (floor == null || floor.rooms.isEmpty()) {
+            return null;
+        }
+        // Last room whose slot starts at or before the point
+        List<RoomLayout> rooms = floor.rooms;
+        int low = 0;
+        int high = rooms.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rooms.get(middle).slotX <= x) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        RoomLayout room = rooms.get(low);
+        if (x > room.x && x < room.x + room.width
+                && y > room.y && y < room.y + room.height) {
+            return room;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the layout of the given floor.
+     *
+     * @param floor floor to find
+     * @return the floor's layout, or null if it is not in the building
+     */
+    FloorLayout getFloor(Floor floor) {
+        return this.floorLayouts.get(floor);
+    }
+
+    /**
+     * Returns the layout of the given room.
+     *
+     * @param room room to find
+     * @return the room's layout, or null if it is not in the building
+     */
+    RoomLayout getRoom(Room room) {
+        return this.roomLayouts.get(room);
+    }
+}
@@ -8,9 +8,11 @@ import bms.sensors.OccupancySensor;
 import bms.sensors.Sensor;
 import bms.util.StudyRoomRecommender;
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -31,7 +33,7 @@ import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -397,13 +399,23 @@ public class View {
         this.tabPane.prefHeightProperty().bind(this.mainWindow.heightProperty());
 
         for (Building building : viewModel.getBuildings()) {
-            Tab tab = new Tab(building.getName(), createBuildingCanvas(building));
-            tab.setClosable(false);
-            tabPane.getTabs().add(tab);
+            tabPane.getTabs().add(createBuildingTab(building));
         }
         viewModel.setCurrentBuildingIndexProperty(tabPane.getSelectionModel()
                 .selectedIndexProperty());
 
+        // Stop the canvases of removed tabs from following the model, which
+        // would otherwise keep them and their buildings in memory
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) change -> {
+            while (change.next()) {
+                for (Tab tab : change.getRemoved()) {
+                    if (tab.getContent() instanceof BuildingCanvas) {
+                        ((BuildingCanvas) tab.getContent()).dispose();
+                    }
+                }
+            }
+        });
+
         // Draw the currently selected building when the selected tab changes
         tabPane.getSelectionModel().selectedItemProperty().addListener(
                 (observableValue, tab, t1) -> getCurrentCanvas().draw());
@@ -411,6 +423,15 @@ public class View {
         return tabPane;
     }
 
+    private Tab createBuildingTab(Building building) {
+        // The tab's canvas is only created once the tab is first shown, so
+        // that lazily loaded buildings are not loaded until they are selected
+        Tab tab = new Tab(building.getName());
+        tab.setClosable(false);
+        tab.setUserData(building);
+        return tab;
+    }
+
     private Canvas createBuildingCanvas(Building building) {
         Canvas canvas = new BuildingCanvas(this.viewModel, building);
         canvas.widthProperty().bind(this.tabPane.widthProperty());
@@ -438,15 +459,17 @@ public class View {
                     "Please enter the file name to save to", "File name:", "");
             if (filename.isEmpty()) return;
 
-            try {
-                viewModel.save(filename.get());
-            } catch (IOException ioException) {
-                viewModel.createErrorDialog("Error saving buildings to file",
-                        ioException.getMessage());
-                return;
-            }
-            viewModel.createSuccessDialog("Saved file successfully",
-                    "Saved buildings to \"" + filename + "\" successfully.");
+            // Write the file in the background so the simulation keeps running
+            viewModel.saveAsync(filename.get()).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    viewModel.createErrorDialog("Error saving buildings to file",
+                            error.getMessage());
+                    return;
+                }
+                viewModel.createSuccessDialog("Saved file successfully",
+                        "Saved buildings to \"" + filename.get()
+                                + "\" successfully.");
+            });
         });
 
         var resetViewButton = new Button("Reset View");
@@ -457,7 +480,8 @@ public class View {
                 "- Move around the canvas by clicking and dragging with the "
                         + "right mouse button\n"
                         + "- Select a floor or room by clicking on it with the "
-                        + "left mouse button\n"));
+                        + "left mouse button\n"
+                        + "- Zoom in and out with the mouse wheel\n"));
 
         var timeElapsedLabel = new Label();
         timeElapsedLabel.textProperty().bind(viewModel.getTimeElapsedProperty());
@@ -465,9 +489,14 @@ public class View {
         timeElapsedLabel.setMaxHeight(Double.MAX_VALUE); // centered vertically
         timeElapsedLabel.setAlignment(Pos.CENTER);
 
+        var saveStatusLabel = new Label();
+        saveStatusLabel.textProperty().bind(viewModel.getSaveStatusProperty());
+        saveStatusLabel.setMaxHeight(Double.MAX_VALUE);
+        saveStatusLabel.setAlignment(Pos.CENTER);
+
         var buttonContainer = new HBox(10);
         buttonContainer.getChildren().addAll(pauseButton, saveButton,
-                resetViewButton, helpButton);
+                resetViewButton, helpButton, saveStatusLabel);
         infoBar.setLeft(buttonContainer);
         infoBar.setRight(timeElapsedLabel);
         return infoBar;
@@ -488,10 +517,14 @@ public class View {
                     lastNanoTime = currentNanoTime;
                     viewModel.tick();
                 }
+                // Changes published by the model only redraw the parts of
+                // the canvas showing them
+                viewModel.dispatchEvents();
                 if (viewModel.isChanged()) {
                     viewModel.notChanged();
                     update();
                 }
+                getCurrentCanvas().drawIfChanged();
             }
         }.start();
 
@@ -527,9 +560,25 @@ public class View {
 
     private BuildingCanvas getCurrentCanvas() {
         int buildingIndex = this.viewModel.getCurrentBuildingIndexProperty().get();
-        BuildingCanvas canvas = (BuildingCanvas) this.tabPane.getTabs()
-                .get(buildingIndex).getContent();
-        return canvas;
+        Tab tab = this.tabPane.getTabs().get(buildingIndex);
+        if (tab.getContent() == null) {
+            Building building = (Building) tab.getUserData();
+            try {
+                // Loads a lazily loaded building, which fails if its lines
+                // of the save file are invalid
+                building.getFloors();
+            } catch (IllegalStateException | UncheckedIOException e) {
+                // Dialogs cannot be shown while a frame is being drawn
+                String name = building.getName();
+                Platform.runLater(() -> viewModel.createErrorDialog(
+                        "Could not load building \"" + name + "\"",
+                        e.getMessage()));
+                // Shown empty, as the building's floors are unavailable
+                building = new Building(name);
+            }
+            tab.setContent(createBuildingCanvas(building));
+        }
+        return (BuildingCanvas) tab.getContent();
     }
 
     private void update() {
@@ -541,14 +590,12 @@ public class View {
         for (Building building : viewModel.getBuildings()) {
             String buildingName = building.getName();
             if (!tabTitles.contains(buildingName)) {
-                Tab tab = new Tab(buildingName, createBuildingCanvas(building));
-                tab.setClosable(false);
+                Tab tab = createBuildingTab(building);
                 tabPane.getTabs().add(tab);
                 // Switch to the new building's tab
                 tabPane.getSelectionModel().select(tab);
             }
         }
-        getCurrentCanvas().draw();
         viewModel.updateInfoText();
     }
 }
@@ -1,6 +1,9 @@
 package bms.display;
 
 import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.building.BuildingSnapshot;
+import bms.building.SaveJournal;
 import bms.exceptions.*;
 import bms.floor.Floor;
 import bms.hazardevaluation.RuleBasedHazardEvaluator;
@@ -8,15 +11,21 @@ import bms.hazardevaluation.WeightingBasedHazardEvaluator;
 import bms.room.Room;
 import bms.room.RoomType;
 import bms.sensors.*;
+import bms.util.EventBus;
+import bms.util.ModelEvent;
 import bms.util.TimedItemManager;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.scene.control.Alert;
 import javafx.scene.input.KeyCode;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * View model for the GUI - you will need to implement a few methods here.
@@ -45,11 +54,86 @@ public class ViewModel {
     private BooleanProperty roomSelected = new SimpleBooleanProperty(false);
     private BooleanProperty noSelected = new SimpleBooleanProperty(true);
 
+    /**
+     * File that quick saves are written to.
+     */
+    private static final String QUICKSAVE_FILENAME = "saves/quicksave.txt";
+
+    private BooleanProperty saving = new SimpleBooleanProperty(false);
+    private StringProperty saveStatus = new SimpleStringProperty("");
+
+    // Single background thread on which saves are encoded and written, in
+    // the order they were requested
+    private final ExecutorService saveExecutor =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "save");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private int pendingSaves = 0;
+
+    private final SaveJournal quicksaveJournal =
+            new SaveJournal(QUICKSAVE_FILENAME);
+
+    // Whether a model event since the last dispatch concerned the selected
+    // building, floor or room, so the info text needs updating
+    private boolean infoTextStale = false;
+
+    // Subscriber to changes to the model, kept so it can be unsubscribed
+    private final Consumer<ModelEvent> subscriber = this::onModelChanged;
+
     /**
      * @ass2_given
      */
     public ViewModel(List<Building> buildings) {
         this.buildings = buildings;
+        EventBus.getInstance().subscribe(ModelEvent.class, this.subscriber);
+    }
+
+    /**
+     * Stops this view model from being told about changes to the model, so
+     * that it and its buildings can be garbage collected once it is no
+     * longer used.
+     */
+    public void dispose() {
+        EventBus.getInstance().unsubscribe(ModelEvent.class, this.subscriber);
+    }
+
+    /**
+     * Delivers the changes published on the {@link EventBus} since the last
+     * dispatch, then updates the info text if any of them concerned the
+     * current selection.
+     * <p>
+     * Must be called on the JavaFX application thread.
+     */
+    public void dispatchEvents() {
+        EventBus.getInstance().dispatch();
+        if (this.infoTextStale) {
+            this.infoTextStale = false;
+            updateInfoText();
+        }
+    }
+
+    /**
+     * Marks the info text as needing an update if the given change concerns
+     * the selected building, floor or room, or one of the selected room's
+     * sensors.
+     */
+    private void onModelChanged(ModelEvent event) {
+        Object source = event.getSource();
+        if (source == this.selectedFloor || source == this.selectedRoom
+                || (this.currentBuildingIndex != null
+                && this.currentBuildingIndex.get() >= 0
+                && source == getSelectedBuilding())) {
+            this.infoTextStale = true;
+        } else if (event instanceof SensorEvent && this.selectedRoom != null) {
+            for (Sensor sensor : this.selectedRoom.getSensors()) {
+                if (sensor == source) {
+                    this.infoTextStale = true;
+                    break;
+                }
+            }
+        }
     }
 
     /**
@@ -61,7 +145,7 @@ public class ViewModel {
      * <tr><td>P, p</td><td>Toggles whether the simulation is paused</td></tr>
      * <tr><td>Q, q</td><td>Quits the application entirely</td></tr>
      * <tr><td>S, s</td><td>Saves the simulation data to "saves/quicksave.txt",
-     * see {@link ViewModel#save(String)}
+     * in the background, see {@link ViewModel#quicksave()}
      * </td></tr>
      * </table>
      *
@@ -69,7 +153,23 @@ public class ViewModel {
      * @ass2
      */
     public void accept(KeyCode keyCode) {
-        // TODO implement for assignment 2
+        switch (keyCode) {
+            case P:
+                togglePause();
+                break;
+            case Q:
+                Platform.exit();
+                System.exit(0);
+                break;
+            case S:
+                quicksave().whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        createErrorDialog("Error saving buildings to file",
+                                e.getMessage());
+                    }
+                });
+                break;
+        }
     }
 
     /**
@@ -85,7 +185,8 @@ public class ViewModel {
      * @ass2
      */
     public void togglePause() {
-        // TODO implement for assignment 2
+        this.paused.setValue(!this.paused.get());
+        this.pauseButtonText.setValue(this.paused.get() ? "Unpause" : "Pause");
     }
 
     /**
@@ -98,6 +199,13 @@ public class ViewModel {
      * <p>
      * If an IOException occurs when writing to file, it should be propagated
      * out of this method.
+     * <p>
+     * Each building is streamed to a temporary file record by record, which
+     * then atomically replaces the given file, keeping its previous versions
+     * as numbered backups; see
+     * {@link BuildingInitialiser#saveBuildings(List, String)}. Files named
+     * with {@link BuildingInitialiser#BINARY_EXTENSION} are saved in the
+     * compact binary format instead.
      *
      * @param filename path of file to save to
      * @throws IOException if any IOExceptions are encountered while writing to
@@ -105,7 +213,119 @@ public class ViewModel {
      * @ass2
      */
     public void save(String filename) throws IOException {
-        // TODO implement for assignment 2
+        if (BuildingInitialiser.isBinaryFilename(filename)) {
+            BuildingInitialiser.saveBuildingsBinary(
+                    BuildingSnapshot.of(this.buildings), filename);
+        } else {
+            BuildingInitialiser.saveBuildings(this.buildings, filename);
+        }
+    }
+
+    /**
+     * Saves the data used by the building management system to the given file
+     * location without blocking the JavaFX application thread.
+     * <p>
+     * A snapshot of the buildings is taken immediately, so the saved file
+     * reflects the state of the simulation between ticks at the time this
+     * method is called. The snapshot is then encoded and written to the file
+     * on a background thread, while the simulation continues. As with
+     * {@link ViewModel#save(String)}, the format depends on the file's
+     * extension.
+     * <p>
+     * This method must be called on the JavaFX application thread. The
+     * returned future is completed on the JavaFX application thread once the
+     * file has been written, or exceptionally with the exception
+     * encountered. The <code>saving</code> and <code>saveStatus</code>
+     * properties are updated as the save progresses.
+     *
+     * @param filename path of file to save to
+     * @return future completed once the save has finished
+     */
+    public CompletableFuture<Void> saveAsync(String filename) {
+        List<BuildingSnapshot> snapshot;
+        try {
+            snapshot = BuildingSnapshot.of(this.buildings);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            // A lazily loaded building could not be loaded
+            return CompletableFuture.failedFuture(e);
+        }
+        if (BuildingInitialiser.isBinaryFilename(filename)) {
+            return saveInBackground(filename, () -> BuildingInitialiser
+                    .saveBuildingsBinary(snapshot, filename));
+        }
+        return saveInBackground(filename,
+                () -> BuildingInitialiser.saveBuildings(snapshot, filename));
+    }
+
+    /**
+     * Quick saves the data used by the building management system to
+     * "saves/quicksave.txt" without blocking the JavaFX application thread.
+     * <p>
+     * Only the floors which have changed since the last quick save are
+     * written, by appending them to the quick save file's journal (see
+     * {@link SaveJournal}). The first quick save, and any which fall due for
+     * compaction, rewrite the whole file as
+     * {@link ViewModel#saveAsync(String)} does.
+     * <p>
+     * This method must be called on the JavaFX application thread.
+     *
+     * @return future completed on the JavaFX application thread once the
+     * save has finished
+     */
+    public CompletableFuture<Void> quicksave() {
+        SaveJournal.Update update;
+        try {
+            update = this.quicksaveJournal.prepare(this.buildings);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            // A lazily loaded building could not be loaded
+            return CompletableFuture.failedFuture(e);
+        }
+        return saveInBackground(QUICKSAVE_FILENAME,
+                () -> this.quicksaveJournal.write(update));
+    }
+
+    /**
+     * Writes to a file on the save thread, updating the <code>saving</code>
+     * and <code>saveStatus</code> properties as the save progresses.
+     */
+    private CompletableFuture<Void> saveInBackground(String filename,
+            SaveTask task) {
+        this.pendingSaves++;
+        this.saving.setValue(true);
+        this.saveStatus.setValue("Saving to \"" + filename + "\"...");
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        this.saveExecutor.execute(() -> {
+            // Any failure must still be reported, or the save would appear
+            // to be in progress forever
+            Exception error = null;
+            try {
+                task.run();
+            } catch (Exception e) {
+                error = e;
+            }
+            Exception saveError = error;
+            Platform.runLater(() -> {
+                this.pendingSaves--;
+                this.saving.setValue(this.pendingSaves > 0);
+                if (saveError == null) {
+                    this.saveStatus.setValue("Saved to \"" + filename + "\"");
+                    result.complete(null);
+                } else {
+                    this.saveStatus.setValue("Could not save to \""
+                            + filename + "\"");
+                    result.completeExceptionally(saveError);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * An action which writes to a save file.
+     */
+    private interface SaveTask {
+        void run() throws IOException;
     }
 
     /**
@@ -120,12 +340,20 @@ public class ViewModel {
      * StringProperty should be updated to contain "X minutes elapsed" where
      * X is the number of ticks elapsed.
      * <p>
-     * Finally, the <code>registerChange()</code> method should be called.
+     * The timed items publish their own changes on the {@link EventBus}, so
+     * only the parts of the view showing them are updated by
+     * {@link #dispatchEvents()}, rather than registering a change of the
+     * whole model.
      *
      * @ass2
      */
     public void tick() {
-        // TODO implement for assignment 2
+        if (this.paused.get()) {
+            return;
+        }
+        TimedItemManager.getInstance().elapseOneMinute();
+        this.ticks.setValue(this.ticks.get() + 1);
+        this.timeElapsed.setValue(this.ticks.get() + " minutes elapsed");
     }
 
     /**
@@ -161,6 +389,22 @@ public class ViewModel {
         return timeElapsed;
     }
 
+    /**
+     * Returns whether a save started by {@link ViewModel#saveAsync(String)}
+     * is still in progress.
+     */
+    public ReadOnlyBooleanProperty isSaving() {
+        return saving;
+    }
+
+    /**
+     * Returns a description of the progress of the most recent save started
+     * by {@link ViewModel#saveAsync(String)}.
+     */
+    public ReadOnlyStringProperty getSaveStatusProperty() {
+        return saveStatus;
+    }
+
     /**
      * @ass2_given
      */
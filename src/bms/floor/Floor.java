@@ -5,9 +5,14 @@ import bms.exceptions.FloorTooSmallException;
 import bms.exceptions.InsufficientSpaceException;
 import bms.room.Room;
 import bms.room.RoomType;
+import bms.sensors.Sensor;
 import bms.util.Encodable;
+import bms.util.EventBus;
 import bms.util.FireDrill;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -57,6 +62,11 @@ public class Floor implements FireDrill,Encodable {
      */
     private MaintenanceSchedule maintenanceSchedule;
 
+    /**
+     * Records whether the floor itself has changed since it was last saved.
+     */
+    private boolean modified;
+
     /**
      * Creates a new floor with the given floor number.
      *
@@ -75,6 +85,7 @@ public class Floor implements FireDrill,Encodable {
 
         // Defaults to Null
         maintenanceSchedule = null;
+        this.modified = true;
     }
 
     /**
@@ -227,6 +238,9 @@ public class Floor implements FireDrill,Encodable {
 
         // No problems, so add room to the list of rooms
         rooms.add(newRoom);
+        this.modified = true;
+        EventBus.getInstance().publish(
+                new FloorEvent(this, FloorEvent.Kind.ROOMS));
     }
 
     /**
@@ -271,6 +285,31 @@ public class Floor implements FireDrill,Encodable {
         return maintenanceSchedule;
     }
 
+    /**
+     * Returns a new list containing the timed items of this floor, ie. the
+     * timed sensors of its rooms, in order, followed by its maintenance
+     * schedule if it has one.
+     * <p>
+     * These are the items to deregister from the timed item manager when the
+     * floor is no longer used.
+     *
+     * @return timed items of the floor
+     */
+    public List<TimedItem> getTimedItems() {
+        List<TimedItem> timedItems = new ArrayList<>();
+        for (Room room : this.rooms) {
+            for (Sensor sensor : room.getSensors()) {
+                if (sensor instanceof TimedItem) {
+                    timedItems.add((TimedItem) sensor);
+                }
+            }
+        }
+        if (this.maintenanceSchedule != null) {
+            timedItems.add(this.maintenanceSchedule);
+        }
+        return timedItems;
+    }
+
 
     /**
      * Changes the width and length of this floor.
@@ -295,6 +334,9 @@ public class Floor implements FireDrill,Encodable {
 
         this.width = newWidth;
         this.length = newLength;
+        this.modified = true;
+        EventBus.getInstance().publish(
+                new FloorEvent(this, FloorEvent.Kind.DIMENSIONS));
     }
 
     /**
@@ -343,8 +385,48 @@ public class Floor implements FireDrill,Encodable {
 
         }
 
+        // The replaced schedule would otherwise keep moving the same rooms
+        if (this.maintenanceSchedule != null) {
+            TimedItemManager.getInstance().deregisterTimedItem(
+                    this.maintenanceSchedule);
+        }
         this.maintenanceSchedule = new MaintenanceSchedule(roomOrder);
+        this.modified = true;
+        EventBus.getInstance().publish(
+                new FloorEvent(this, FloorEvent.Kind.MAINTENANCE_SCHEDULE));
+    }
 
+    /**
+     * Returns whether the floor, its maintenance schedule or any of its rooms
+     * have been created or changed since they were last marked as saved.
+     *
+     * @return true if the floor has unsaved changes
+     */
+    public boolean hasUnsavedChanges() {
+        if (this.modified || (this.maintenanceSchedule != null
+                && this.maintenanceSchedule.hasUnsavedChanges())) {
+            return true;
+        }
+        for (Room room : this.rooms) {
+            if (room.hasUnsavedChanges()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the current state of the floor, its maintenance schedule and all
+     * of its rooms as saved.
+     */
+    public void markSaved() {
+        this.modified = false;
+        if (this.maintenanceSchedule != null) {
+            this.maintenanceSchedule.markSaved();
+        }
+        for (Room room : this.rooms) {
+            room.markSaved();
+        }
     }
 
     /**
@@ -495,15 +577,29 @@ public class Floor implements FireDrill,Encodable {
      */
     @Override
     public String encode() {
-        // need more formatting
-
-        ArrayList<String> roomEncodeArray = new ArrayList<>();
-
-        this.rooms.forEach( (room) -> roomEncodeArray.add(room.encode()) );
-        String roomEncodeArrayStr = Arrays.toString(roomEncodeArray.toArray())
-                .replace("[","").replace("]", "");
+        return Encodable.encodeToString(this);
+    }
 
-        return this.getFloorNumber()+":"+this.getWidth()+":"+this.getWidth()+":"+this.getRooms().size()
-                +System.lineSeparator()+roomEncodeArrayStr;
+    /**
+     * Writes the machine-readable representation of this floor, its maintenance schedule (if any) and all of
+     * its rooms to the given output, one record at a time.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append(String.valueOf(this.getFloorNumber())).append(':')
+                .append(String.valueOf(this.getWidth())).append(':')
+                .append(String.valueOf(this.getLength())).append(':')
+                .append(String.valueOf(this.rooms.size()));
+        if (this.maintenanceSchedule != null) {
+            out.append(':');
+            this.maintenanceSchedule.encodeTo(out);
+        }
+        for (Room room : this.rooms) {
+            out.append(System.lineSeparator());
+            room.encodeTo(out);
+        }
     }
 }
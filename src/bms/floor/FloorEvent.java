@@ -0,0 +1,62 @@
+package bms.floor;
+
+import bms.util.ModelEvent;
+
+/**
+ * Event published when a floor changes, other than by a change to one of its
+ * rooms.
+ */
+public class FloorEvent extends ModelEvent {
+
+    /**
+     * Kinds of change to a floor.
+     */
+    public enum Kind {
+        /**
+         * A room was added.
+         */
+        ROOMS,
+        /**
+         * The floor's width or length changed.
+         */
+        DIMENSIONS,
+        /**
+         * A new maintenance schedule was created.
+         */
+        MAINTENANCE_SCHEDULE
+    }
+
+    /**
+     * Kind of change.
+     */
+    private final Kind kind;
+
+    /**
+     * Creates an event for a change of the given kind to the given floor.
+     *
+     * @param floor floor which changed
+     * @param kind kind of change
+     */
+    public FloorEvent(Floor floor, Kind kind) {
+        super(floor);
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the floor which changed.
+     *
+     * @return floor
+     */
+    public Floor getFloor() {
+        return (Floor) getSource();
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return kind of change
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+}
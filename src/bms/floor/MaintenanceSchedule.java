@@ -4,12 +4,14 @@ import bms.room.Room;
 import bms.room.RoomState;
 import bms.room.RoomType;
 import bms.sensors.TimedSensor;
+import bms.sensors.Sensor;
+import bms.util.DependentTimedItem;
 import bms.util.Encodable;
 import bms.util.TimedItem;
 import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -17,7 +19,7 @@ import java.util.List;
  * The maintenance time for each room depends on the type of the room and its area.
  * Maintenance cannot progress whilst an evacuation is in progress.
  */
-public class MaintenanceSchedule implements TimedItem, Encodable {
+public class MaintenanceSchedule implements DependentTimedItem, Encodable {
 
     /**
      * list of rooms on which to perform maintenance, in order
@@ -29,6 +31,12 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
      * (according to the system, not real life).
      */
     private int timeElapsed;
+
+    /**
+     * Records whether the schedule has been saved since it was created.
+     */
+    private boolean modified = true;
+
     /**
      * Creates a new maintenance schedule for a floor's list of rooms.
      * In this constructor, the new maintenance schedule should be registered as a timed item with the timed item manager.
@@ -44,6 +52,26 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
         }
     }
 
+    /**
+     * Returns whether the schedule has been created since it was last marked
+     * as saved.
+     * <p>
+     * Progress through the schedule is not saved, so it does not count as a
+     * change.
+     *
+     * @return true if the schedule has not been saved
+     */
+    public boolean hasUnsavedChanges() {
+        return this.modified;
+    }
+
+    /**
+     * Marks the schedule as saved.
+     */
+    public void markSaved() {
+        this.modified = false;
+    }
+
     /**
      * Returns the time taken to perform maintenance on the given room, in minutes.
      * @param room room on which to perform maintenance
@@ -80,6 +108,14 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
         return null;
     }
 
+    /**
+     * Returns a new list containing the rooms on which maintenance is performed, in order.
+     * @return list of rooms in maintenance order
+     */
+    public List<Room> getRoomOrder(){
+        return new ArrayList<>(this.roomOrder);
+    }
+
     /**
      * Returns the number of minutes that have elapsed while maintaining the current room (getCurrentRoom()).
      * @return time elapsed maintaining current room
@@ -116,6 +152,29 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
         }
     }
 
+    /**
+     * Returns the timed sensors of the rooms in the schedule, since whether
+     * maintenance progresses each minute depends on whether the current room
+     * must be evacuated.
+     *
+     * @return timed sensors of all rooms in the schedule
+     */
+    @Override
+    public List<TimedItem> getDependencies() {
+        List<TimedItem> dependencies = new ArrayList<>();
+        if (this.roomOrder == null) {
+            return dependencies;
+        }
+        for (Room room : this.roomOrder) {
+            for (Sensor sensor : room.getSensors()) {
+                if (sensor instanceof TimedItem) {
+                    dependencies.add((TimedItem) sensor);
+                }
+            }
+        }
+        return dependencies;
+    }
+
     /**
      * Stops the in-progress maintenance of the current room and progresses to the next room.
      */
@@ -161,11 +220,22 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
      */
     @Override
     public String encode() {
-        ArrayList<String> roomEncodeArray = new ArrayList<>();
-
-        this.roomOrder.forEach( (room) -> roomEncodeArray.add(String.valueOf(room.getRoomNumber())) );
+        return Encodable.encodeToString(this);
+    }
 
-        return Arrays.toString(roomEncodeArray.toArray())
-                .replace("[","").replace("]", "");
+    /**
+     * Writes the comma-separated room numbers of this schedule's room order to the given output.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        for (int i = 0; i < this.roomOrder.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(String.valueOf(this.roomOrder.get(i).getRoomNumber()));
+        }
     }
 }
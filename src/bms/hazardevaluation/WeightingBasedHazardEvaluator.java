@@ -74,6 +74,15 @@ public class WeightingBasedHazardEvaluator implements HazardEvaluator{
         return new ArrayList<Integer>(this.sensors.values());
     }
 
+    /**
+     * Returns the weighting associated with the given sensor.
+     * @param sensor sensor monitored by this hazard evaluator
+     * @return weighting of the sensor; 0 if the sensor is not monitored by this hazard evaluator
+     */
+    public int getWeighting(HazardSensor sensor){
+        return this.sensors.getOrDefault(sensor, 0);
+    }
+
     /**
      * Returns the string representation of this hazard evaluator.
      *
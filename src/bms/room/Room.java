@@ -3,10 +3,13 @@ package bms.room;
 import bms.exceptions.DuplicateSensorException;
 import bms.hazardevaluation.HazardEvaluator;
 import bms.hazardevaluation.WeightingBasedHazardEvaluator;
+import bms.sensors.HazardSensor;
 import bms.sensors.Sensor;
 import bms.sensors.TemperatureSensor;
 import bms.util.Encodable;
+import bms.util.EventBus;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -69,6 +72,11 @@ public class Room implements Encodable {
      */
     private HazardEvaluator hazardEvaluator;
 
+    /**
+     * Records whether the room has changed since it was last saved.
+     */
+    private boolean modified;
+
     /**
      * Creates a new room with the given room number.
      *
@@ -86,6 +94,7 @@ public class Room implements Encodable {
         this.fireDrill = false;
         this.maintenance = false;
         this.hazardEvaluator = null;
+        this.modified = true;
     }
 
     /**
@@ -171,7 +180,12 @@ public class Room implements Encodable {
      * @ass1
      */
     public void setFireDrill(boolean fireDrill) {
-        this.fireDrill = fireDrill;
+        if (this.fireDrill != fireDrill) {
+            this.modified = true;
+            this.fireDrill = fireDrill;
+            EventBus.getInstance().publish(
+                    new RoomEvent(this, RoomEvent.Kind.FIRE_DRILL));
+        }
     }
 
     /**
@@ -198,7 +212,11 @@ public class Room implements Encodable {
      * @param maintenance whether there is maintenance ongoing
      */
     public void setMaintenance(boolean maintenance){
-        this.maintenance = maintenance;
+        if (this.maintenance != maintenance) {
+            this.maintenance = maintenance;
+            EventBus.getInstance().publish(
+                    new RoomEvent(this, RoomEvent.Kind.MAINTENANCE));
+        }
     }
 
     /**
@@ -215,6 +233,26 @@ public class Room implements Encodable {
      */
     public void setHazardEvaluator(HazardEvaluator hazardEvaluator){
         this.hazardEvaluator = hazardEvaluator;
+        this.modified = true;
+        EventBus.getInstance().publish(
+                new RoomEvent(this, RoomEvent.Kind.HAZARD_EVALUATOR));
+    }
+
+    /**
+     * Returns whether the room has been created or changed since it was last
+     * marked as saved.
+     *
+     * @return true if the room has unsaved changes
+     */
+    public boolean hasUnsavedChanges() {
+        return this.modified;
+    }
+
+    /**
+     * Marks the current state of the room as saved.
+     */
+    public void markSaved() {
+        this.modified = false;
     }
 
 
@@ -240,8 +278,11 @@ public class Room implements Encodable {
             }
         }
         sensors.add(sensor);
+        this.modified = true;
         setHazardEvaluator(null);
         sensors.sort(Comparator.comparing(s -> s.getClass().getSimpleName()));
+        EventBus.getInstance().publish(
+                new RoomEvent(this, RoomEvent.Kind.SENSORS));
     }
 
     /**
@@ -397,34 +438,40 @@ public class Room implements Encodable {
      */
     @Override
     public String encode() {
+        return Encodable.encodeToString(this);
+    }
 
-        ArrayList<String> sensorEncodeArray = new ArrayList<>();
-        String roomAreaInDecimal = String.format("%.2f", this.getArea());
-
-        this.getSensors().forEach( (sensor) -> sensorEncodeArray.add(sensor.encode()) );
-        String sensorEncodeArrayStr = Arrays.toString(sensorEncodeArray.toArray())
-                .replace("[","").replace("]", "");
-
-        if (this.getHazardEvaluator() == null){
-            return this.getRoomNumber()+":"+this.getType()+":"+roomAreaInDecimal+":"+this.getSensors().size()
-                    +System.lineSeparator()+sensorEncodeArrayStr;
-        }
-
-        if (this.getHazardEvaluator().toString().equals("RuleBased")){
-            return this.getRoomNumber()+":"+this.getType()+":"+roomAreaInDecimal+":"+this.getSensors().size()+":"+this.getHazardEvaluator().toString()
-                    +System.lineSeparator()+sensorEncodeArrayStr;
+    /**
+     * Writes the machine-readable representation of this room and all of its sensors to the given output,
+     * one record at a time.
+     * <p>
+     * If the room uses a weighting-based hazard evaluator, each sensor's record is followed by "@" and the
+     * sensor's weighting.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append(String.valueOf(this.getRoomNumber())).append(':')
+                .append(this.getType().toString()).append(':')
+                .append(String.valueOf(this.getArea())).append(':')
+                .append(String.valueOf(this.sensors.size()));
+        if (this.hazardEvaluator != null) {
+            out.append(':').append(this.hazardEvaluator.toString());
         }
-        List<Integer> weightingsList = ((WeightingBasedHazardEvaluator)this.getHazardEvaluator()).getWeightings();
-        List<String> weightingBasedEvalList = new ArrayList<>();
 
-        for (int i = 0; i < weightingsList.size(); i++) {
-            weightingBasedEvalList.add(sensorEncodeArray.get(i)+"@"+weightingsList.get(i));
+        WeightingBasedHazardEvaluator weightingEvaluator =
+                this.hazardEvaluator instanceof WeightingBasedHazardEvaluator
+                        ? (WeightingBasedHazardEvaluator) this.hazardEvaluator
+                        : null;
+        for (Sensor sensor : this.sensors) {
+            out.append(System.lineSeparator());
+            sensor.encodeTo(out);
+            if (weightingEvaluator != null && sensor instanceof HazardSensor) {
+                out.append('@').append(String.valueOf(
+                        weightingEvaluator.getWeighting((HazardSensor) sensor)));
+            }
         }
-        String weightingBasedEvalListStr = Arrays.toString(weightingBasedEvalList.toArray())
-                .replace("[","").replace("]", "");
-
-        return this.getRoomNumber()+":"+this.getType()+":"+roomAreaInDecimal+":"+this.getSensors().size()
-                +":"+this.getHazardEvaluator().toString()
-                +System.lineSeparator()+weightingBasedEvalListStr;
     }
 }
@@ -0,0 +1,70 @@
+package bms.room;
+
+import bms.util.ModelEvent;
+
+/**
+ * Event published when a room changes.
+ * <p>
+ * A change of fire drill or maintenance is also a change of the room's
+ * state. The room's state may also change when the reading of one of its
+ * sensors changes, which is published as a
+ * {@link bms.sensors.SensorEvent} instead.
+ */
+public class RoomEvent extends ModelEvent {
+
+    /**
+     * Kinds of change to a room.
+     */
+    public enum Kind {
+        /**
+         * A fire drill was started or cancelled.
+         */
+        FIRE_DRILL,
+        /**
+         * Maintenance was started or finished.
+         */
+        MAINTENANCE,
+        /**
+         * A sensor was added.
+         */
+        SENSORS,
+        /**
+         * The hazard evaluator was set or removed.
+         */
+        HAZARD_EVALUATOR
+    }
+
+    /**
+     * Kind of change.
+     */
+    private final Kind kind;
+
+    /**
+     * Creates an event for a change of the given kind to the given room.
+     *
+     * @param room room which changed
+     * @param kind kind of change
+     */
+    public RoomEvent(Room room, Kind kind) {
+        super(room);
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the room which changed.
+     *
+     * @return room
+     */
+    public Room getRoom() {
+        return (Room) getSource();
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return kind of change
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+}
@@ -1,6 +1,8 @@
 package bms.sensors;
 
-import java.util.Arrays;
+import bms.util.Encodable;
+
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Objects;
 
@@ -23,8 +25,6 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor, Co
      */
     private int variationLimit;
 
-    private int[] sensorReadings;
-
     /**
      * Creates a new carbon dioxide sensor with the given sensor readings,
      * update frequency, ideal CO2 value and acceptable variation limit.
@@ -68,7 +68,6 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor, Co
 
         this.idealValue = idealValue;
         this.variationLimit = variationLimit;
-        this.sensorReadings = sensorReadings;
     }
 
     /**
@@ -177,9 +176,8 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor, Co
      */
     @Override
     public int hashCode() {
-        int result = Objects.hash(super.hashCode(), idealValue, variationLimit);
-        result = 31 * result + Arrays.hashCode(sensorReadings);
-        return result;
+        // The readings and update frequency are hashed by TimedSensor
+        return Objects.hash(super.hashCode(), idealValue, variationLimit);
     }
 
     /**
@@ -235,9 +233,7 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor, Co
         if (!super.equals(o)) return false;
         CarbonDioxideSensor that = (CarbonDioxideSensor) o;
         return idealValue == that.idealValue &&
-                variationLimit == that.variationLimit &&
-                getUpdateFrequency() == that.getUpdateFrequency() &&
-                Arrays.equals(sensorReadings, that.sensorReadings);
+                variationLimit == that.variationLimit;
     }
 
 
@@ -248,12 +244,23 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor, Co
      */
     @Override
     public String encode() {
-        return String.format(
-                "CarbonDioxideSensor:%s:%d:%d:%d",
-                super.encode(),
-                this.getUpdateFrequency(),
-                this.idealValue,
-                this.variationLimit);
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes this sensor's record to the given output, in the format
+     * "CarbonDioxideSensor:readings:updateFrequency:idealValue:variationLimit".
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("CarbonDioxideSensor:");
+        super.encodeTo(out);
+        out.append(':').append(String.valueOf(this.getUpdateFrequency()))
+                .append(':').append(String.valueOf(this.idealValue))
+                .append(':').append(String.valueOf(this.variationLimit));
     }
 
     /**
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures the noise levels in a room.
  * @ass1
@@ -94,10 +98,21 @@ public class NoiseSensor extends TimedSensor implements HazardSensor, ComfortSen
      */
     @Override
     public String encode() {
-        return String.format(
-                "NoiseSensor:%s:%d",
-                super.encode(),
-                this.getUpdateFrequency());
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes this sensor's record to the given output, in the format
+     * "NoiseSensor:readings:updateFrequency".
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("NoiseSensor:");
+        super.encodeTo(out);
+        out.append(':').append(String.valueOf(this.getUpdateFrequency()));
     }
 
     /**
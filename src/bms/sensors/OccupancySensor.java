@@ -1,6 +1,8 @@
 package bms.sensors;
 
-import java.util.Arrays;
+import bms.util.Encodable;
+
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Objects;
 
@@ -14,8 +16,6 @@ public class OccupancySensor extends TimedSensor implements HazardSensor, Comfor
      */
     private int capacity;
 
-    private int[] sensorReadings;
-
     /**
      * Creates a new occupancy sensor with the given sensor readings, update
      * frequency and capacity.
@@ -38,7 +38,6 @@ public class OccupancySensor extends TimedSensor implements HazardSensor, Comfor
         }
 
         this.capacity = capacity;
-        this.sensorReadings = sensorReadings;
     }
 
     /**
@@ -129,9 +128,8 @@ public class OccupancySensor extends TimedSensor implements HazardSensor, Comfor
      */
     @Override
     public int hashCode() {
-        int result = Objects.hash(super.hashCode(), capacity);
-        result = 31 * result + Arrays.hashCode(sensorReadings);
-        return result;
+        // The readings and update frequency are hashed by TimedSensor
+        return Objects.hash(super.hashCode(), capacity);
     }
 
     /**
@@ -186,9 +184,7 @@ public class OccupancySensor extends TimedSensor implements HazardSensor, Comfor
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         OccupancySensor that = (OccupancySensor) o;
-        return capacity == that.capacity &&
-                getUpdateFrequency() == that.getUpdateFrequency() &&
-                Arrays.equals(sensorReadings, that.sensorReadings);
+        return capacity == that.capacity;
     }
 
 
@@ -199,11 +195,22 @@ public class OccupancySensor extends TimedSensor implements HazardSensor, Comfor
      */
     @Override
     public String encode() {
-        return String.format(
-                "OccupancySensor:%s:%d:%d",
-                super.encode(),
-                this.getUpdateFrequency(),
-                this.getCapacity());
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes this sensor's record to the given output, in the format
+     * "OccupancySensor:readings:updateFrequency:capacity".
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("OccupancySensor:");
+        super.encodeTo(out);
+        out.append(':').append(String.valueOf(this.getUpdateFrequency()))
+                .append(':').append(String.valueOf(this.getCapacity()));
     }
 
     /**
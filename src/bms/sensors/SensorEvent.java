@@ -0,0 +1,43 @@
+package bms.sensors;
+
+import bms.util.ModelEvent;
+
+/**
+ * Event published when the current reading of a sensor changes.
+ */
+public class SensorEvent extends ModelEvent {
+
+    /**
+     * Current reading of the sensor when the event was published.
+     */
+    private final int reading;
+
+    /**
+     * Creates an event for a change of the given sensor's current reading.
+     *
+     * @param sensor sensor whose reading changed
+     * @param reading new current reading
+     */
+    public SensorEvent(Sensor sensor, int reading) {
+        super(sensor);
+        this.reading = reading;
+    }
+
+    /**
+     * Returns the sensor whose reading changed.
+     *
+     * @return sensor
+     */
+    public Sensor getSensor() {
+        return (Sensor) getSource();
+    }
+
+    /**
+     * Returns the sensor's current reading when the event was published.
+     *
+     * @return new reading
+     */
+    public int getReading() {
+        return this.reading;
+    }
+}
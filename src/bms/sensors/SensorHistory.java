@@ -0,0 +1,234 @@
+package bms.sensors;
+
+/**
+ * Bounded history of the readings of a timed sensor.
+ * <p>
+ * Each time the sensor's current reading changes, the new reading is recorded
+ * along with the minute at which it changed, as given by the sensor's time
+ * elapsed. A reading therefore holds from its minute until the minute of the
+ * next entry. Once the history is full, each new entry replaces the oldest.
+ * <p>
+ * Entries are kept in two primitive ring buffers, so recording a reading
+ * allocates nothing, and the range queries do not box any values.
+ */
+public final class SensorHistory {
+
+    /**
+     * Minute at which each entry's reading was first observed.
+     */
+    private final int[] minutes;
+
+    /**
+     * Reading of each entry.
+     */
+    private final int[] readings;
+
+    /**
+     * Position in the buffers of the oldest entry.
+     */
+    private int start;
+
+    /**
+     * Number of entries in the history.
+     */
+    private int size;
+
+    /**
+     * Creates an empty history holding at most the given number of entries.
+     *
+     * @param depth maximum number of entries, greater than zero
+     */
+    SensorHistory(int depth) {
+        this.minutes = new int[depth];
+        this.readings = new int[depth];
+        this.start = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Records that the sensor observed the given reading at the given
+     * minute, unless it is the same as the latest reading.
+     *
+     * @param minute minute at which the reading was observed, no earlier
+     *               than the latest entry
+     * @param reading reading observed
+     */
+    void record(int minute, int reading) {
+        if (this.size > 0 && getReading(this.size - 1) == reading) {
+            return;
+        }
+        int depth = this.minutes.length;
+        int position;
+        if (this.size < depth) {
+            position = (this.start + this.size++) % depth;
+        } else {
+            position = this.start;
+            this.start = (this.start + 1) % depth;
+        }
+        this.minutes[position] = minute;
+        this.readings[position] = reading;
+    }
+
+    /**
+     * Copies the most recent entries of this history into the given history,
+     * as many as it can hold.
+     *
+     * @param other history to copy into, which must be empty
+     */
+    void copyInto(SensorHistory other) {
+        int copied = Math.min(this.size, other.getDepth());
+        for (int i = this.size - copied; i < this.size; i++) {
+            other.record(getMinute(i), getReading(i));
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries the history can hold.
+     *
+     * @return depth of the history
+     */
+    public int getDepth() {
+        return this.minutes.length;
+    }
+
+    /**
+     * Returns the number of entries in the history.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the minute at which the entry at the given position was first
+     * observed, where position 0 is the oldest entry.
+     *
+     * @param index position of the entry
+     * @return minute of the entry
+     * @throws IndexOutOfBoundsException if there is no entry at the position
+     */
+    public int getMinute(int index) {
+        return this.minutes[position(index)];
+    }
+
+    /**
+     * Returns the reading of the entry at the given position, where position
+     * 0 is the oldest entry.
+     *
+     * @param index position of the entry
+     * @return reading of the entry
+     * @throws IndexOutOfBoundsException if there is no entry at the position
+     */
+    public int getReading(int index) {
+        return this.readings[position(index)];
+    }
+
+    /**
+     * Returns the lowest reading held during the given range of minutes.
+     * <p>
+     * The range is limited to the minutes covered by the history, so it
+     * starts no earlier than the oldest entry.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return lowest reading in the range
+     * @throws IllegalArgumentException if the range is empty, or does not
+     * overlap the minutes covered by the history
+     */
+    public int min(int from, int to) {
+        int first = firstInRange(from, to);
+        int result = Integer.MAX_VALUE;
+        for (int i = first; i < this.size && getMinute(i) < to; i++) {
+            result = Math.min(result, getReading(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest reading held during the given range of minutes.
+     * <p>
+     * The range is limited to the minutes covered by the history, so it
+     * starts no earlier than the oldest entry.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return highest reading in the range
+     * @throws IllegalArgumentException if the range is empty, or does not
+     * overlap the minutes covered by the history
+     */
+    public int max(int from, int to) {
+        int first = firstInRange(from, to);
+        int result = Integer.MIN_VALUE;
+        for (int i = first; i < this.size && getMinute(i) < to; i++) {
+            result = Math.max(result, getReading(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the average reading over the given range of minutes, weighting
+     * each reading by the number of minutes in the range for which it was
+     * held.
+     * <p>
+     * The range is limited to the minutes covered by the history, so it
+     * starts no earlier than the oldest entry.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return average reading in the range
+     * @throws IllegalArgumentException if the range is empty, or does not
+     * overlap the minutes covered by the history
+     */
+    public double average(int from, int to) {
+        int first = firstInRange(from, to);
+        int rangeStart = Math.max(from, getMinute(first));
+        long total = 0;
+        for (int i = first; i < this.size && getMinute(i) < to; i++) {
+            int heldFrom = Math.max(from, getMinute(i));
+            int heldTo = i + 1 < this.size
+                    ? Math.min(to, getMinute(i + 1)) : to;
+            total += (long) getReading(i) * (heldTo - heldFrom);
+        }
+        return (double) total / (to - rangeStart);
+    }
+
+    /**
+     * Returns the position of the entry holding at the start of the given
+     * range of minutes, or of the oldest entry if the range starts before it.
+     */
+    private int firstInRange(int from, int to) {
+        if (from >= to) {
+            throw new IllegalArgumentException("Range of minutes from "
+                    + from + " to " + to + " is empty");
+        }
+        if (this.size == 0 || getMinute(0) >= to) {
+            throw new IllegalArgumentException("Range of minutes from "
+                    + from + " to " + to + " is not covered by the history");
+        }
+        // Latest entry observed no later than the start of the range
+        int low = 0;
+        int high = this.size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getMinute(middle) <= from) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position in the buffers of the entry at the given position
+     * in the history.
+     */
+    private int position(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("No entry at position "
+                    + index + " of a history of " + this.size + " entries");
+        }
+        return (this.start + index) % this.minutes.length;
+    }
+}
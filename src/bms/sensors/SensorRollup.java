@@ -0,0 +1,457 @@
+package bms.sensors;
+
+/**
+ * Aggregates of the readings of a timed sensor over fixed-size cells of
+ * time, at one resolution.
+ * <p>
+ * Each cell covers a number of minutes equal to the resolution, aligned to
+ * multiples of it in the sensor's time elapsed, and holds the lowest, highest
+ * and sum of the readings observed in its minutes, along with the number of
+ * minutes observed. Only the most recent cells are kept, in fixed-size
+ * primitive ring buffers, so queries over long periods read a few hundred
+ * cells rather than every minute.
+ * <p>
+ * Rollups are kept at each of the resolutions {@link #MINUTE},
+ * {@link #QUARTER_HOUR}, {@link #HOUR} and {@link #DAY}.
+ */
+public final class SensorRollup {
+
+    /**
+     * Resolution of rollups with one cell per minute, of which a day is kept.
+     */
+    public static final int MINUTE = 1;
+
+    /**
+     * Resolution of rollups with one cell per 15 minutes, of which a week is
+     * kept.
+     */
+    public static final int QUARTER_HOUR = 15;
+
+    /**
+     * Resolution of rollups with one cell per hour, of which 30 days are
+     * kept.
+     */
+    public static final int HOUR = 60;
+
+    /**
+     * Resolution of rollups with one cell per day, of which a year is kept.
+     */
+    public static final int DAY = 1440;
+
+    /**
+     * Resolution of each level of rollups, from finest to coarsest.
+     */
+    private static final int[] RESOLUTIONS = {MINUTE, QUARTER_HOUR, HOUR, DAY};
+
+    /**
+     * Number of cells kept at each level of rollups.
+     */
+    private static final int[] CELL_COUNTS = {1440, 672, 720, 365};
+
+    /**
+     * Number of minutes covered by each cell.
+     */
+    private final int resolution;
+
+    /**
+     * Lowest reading of each cell.
+     */
+    private final int[] min;
+
+    /**
+     * Highest reading of each cell.
+     */
+    private final int[] max;
+
+    /**
+     * Sum of the readings of each minute of each cell.
+     */
+    private final long[] sum;
+
+    /**
+     * Number of minutes observed in each cell.
+     */
+    private final int[] count;
+
+    /**
+     * Index of the first cell observed, counting from the cell starting at
+     * minute zero.
+     */
+    private int first;
+
+    /**
+     * Index of the most recent cell observed, or -1 if none has been.
+     */
+    private int newest;
+
+    /**
+     * Creates an empty rollup with the given resolution, keeping the given
+     * number of cells.
+     *
+     * @param resolution number of minutes covered by each cell
+     * @param cells number of cells to keep
+     */
+    SensorRollup(int resolution, int cells) {
+        this.resolution = resolution;
+        this.min = new int[cells];
+        this.max = new int[cells];
+        this.sum = new long[cells];
+        this.count = new int[cells];
+        this.first = 0;
+        this.newest = -1;
+    }
+
+    /**
+     * Creates an empty rollup at each resolution, from finest to coarsest.
+     *
+     * @return new rollups
+     */
+    static SensorRollup[] createLevels() {
+        SensorRollup[] levels = new SensorRollup[RESOLUTIONS.length];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new SensorRollup(RESOLUTIONS[i], CELL_COUNTS[i]);
+        }
+        return levels;
+    }
+
+    /**
+     * Returns the position in the given rollups of the rollup with the given
+     * resolution, as created by {@link #createLevels()}.
+     *
+     * @param resolution resolution of the rollup
+     * @return position of the rollup
+     * @throws IllegalArgumentException if there is no rollup at the
+     * resolution
+     */
+    static int levelOf(int resolution) {
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            if (RESOLUTIONS[i] == resolution) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No rollup has a resolution of "
+                + resolution + " minutes");
+    }
+
+    /**
+     * Adds a reading observed during each of the given range of minutes,
+     * which must not be earlier than the minutes already added.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @param reading reading observed
+     */
+    void add(int from, int to, int reading) {
+        if (from >= to) {
+            return;
+        }
+        int last = (to - 1) / this.resolution;
+        int start = Math.max(from / this.resolution,
+                last - this.count.length + 1);
+        prepare(from, last);
+        for (int cell = start; cell <= last; cell++) {
+            int minutes = (int) (Math.min(to, cellStart(cell + 1))
+                    - Math.max(from, cellStart(cell)));
+            merge(cell, reading, reading, (long) reading * minutes, minutes);
+        }
+    }
+
+    /**
+     * Adds the readings observed during each of the given range of minutes by
+     * a sensor which shows each of the given readings in turn for the given
+     * number of minutes, starting from minute zero and wrapping around at the
+     * end of the readings, which must not be earlier than the minutes already
+     * added.
+     * <p>
+     * Each kept cell is added in one step, so this takes time proportional to
+     * the number of cells, however long the range is.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @param readings readings shown by the sensor, in order
+     * @param frequency number of minutes each reading is shown for
+     */
+    void add(int from, int to, int[] readings, int frequency) {
+        if (from >= to) {
+            return;
+        }
+        int last = (to - 1) / this.resolution;
+        int start = Math.max(from / this.resolution,
+                last - this.count.length + 1);
+        prepare(from, last);
+
+        // Sums of the readings shown before each of the readings, so that the
+        // sum over any range of minutes takes constant time
+        long[] before = new long[readings.length + 1];
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        for (int i = 0; i < readings.length; i++) {
+            before[i + 1] = before[i] + readings[i];
+            lowest = Math.min(lowest, readings[i]);
+            highest = Math.max(highest, readings[i]);
+        }
+
+        for (int cell = start; cell <= last; cell++) {
+            long cellFrom = Math.max(from, cellStart(cell));
+            long cellTo = Math.min(to, cellStart(cell + 1));
+            long firstUpdate = cellFrom / frequency;
+            long lastUpdate = (cellTo - 1) / frequency;
+            int min = lowest;
+            int max = highest;
+            if (lastUpdate - firstUpdate + 1 < readings.length) {
+                min = Integer.MAX_VALUE;
+                max = Integer.MIN_VALUE;
+                for (long update = firstUpdate; update <= lastUpdate;
+                        update++) {
+                    int reading = readings[(int) (update % readings.length)];
+                    min = Math.min(min, reading);
+                    max = Math.max(max, reading);
+                }
+            }
+            long sum = sumBefore(cellTo, readings, frequency, before)
+                    - sumBefore(cellFrom, readings, frequency, before);
+            merge(cell, min, max, sum, (int) (cellTo - cellFrom));
+        }
+    }
+
+    /**
+     * Returns the sum of the readings of each minute before the given minute
+     * of a sensor showing the given readings in turn, given the sums of the
+     * readings before each of them.
+     */
+    private static long sumBefore(long minute, int[] readings, int frequency,
+            long[] before) {
+        long cycle = (long) frequency * readings.length;
+        long cycles = minute / cycle;
+        long remainder = minute % cycle;
+        int index = (int) (remainder / frequency);
+        return cycles * frequency * before[readings.length]
+                + frequency * before[index]
+                + (remainder % frequency) * readings[index];
+    }
+
+    /**
+     * Prepares to add readings from the given minute up to the given cell,
+     * emptying the cells which are reused for newer minutes.
+     */
+    private void prepare(int from, int last) {
+        int cells = this.count.length;
+        if (this.newest < 0) {
+            this.first = from / this.resolution;
+        }
+        for (int cell = Math.max(this.newest + 1, last - cells + 1);
+                cell <= last; cell++) {
+            this.count[cell % cells] = 0;
+            this.sum[cell % cells] = 0;
+            this.min[cell % cells] = 0;
+            this.max[cell % cells] = 0;
+        }
+        this.newest = Math.max(this.newest, last);
+    }
+
+    /**
+     * Adds the aggregates of some minutes of readings to the given cell.
+     */
+    private void merge(int cell, int min, int max, long sum, int minutes) {
+        int position = cell % this.count.length;
+        if (this.count[position] == 0) {
+            this.min[position] = min;
+            this.max[position] = max;
+        } else {
+            this.min[position] = Math.min(this.min[position], min);
+            this.max[position] = Math.max(this.max[position], max);
+        }
+        this.sum[position] += sum;
+        this.count[position] += minutes;
+    }
+
+    /**
+     * Returns the first minute of the given cell.
+     */
+    private long cellStart(int cell) {
+        return (long) cell * this.resolution;
+    }
+
+    /**
+     * Returns the number of minutes covered by each cell.
+     *
+     * @return resolution in minutes
+     */
+    public int getResolution() {
+        return this.resolution;
+    }
+
+    /**
+     * Returns the maximum number of cells kept.
+     *
+     * @return number of cells
+     */
+    public int getCellCount() {
+        return this.count.length;
+    }
+
+    /**
+     * Returns the index of the oldest cell kept, where cell <i>n</i> covers
+     * the minutes from <i>n</i> times the resolution.
+     *
+     * @return index of the oldest cell, greater than the newest cell if no
+     * readings have been added
+     */
+    public int getOldestCell() {
+        return Math.max(this.first, this.newest - this.count.length + 1);
+    }
+
+    /**
+     * Returns the index of the most recent cell kept.
+     *
+     * @return index of the newest cell, or -1 if no readings have been added
+     */
+    public int getNewestCell() {
+        return this.newest;
+    }
+
+    /**
+     * Returns the lowest reading in the given cell.
+     *
+     * @param cell index of the cell
+     * @return lowest reading, or zero if the cell has no readings
+     * @throws IndexOutOfBoundsException if the cell is not kept
+     */
+    public int getMin(int cell) {
+        return this.min[position(cell)];
+    }
+
+    /**
+     * Returns the highest reading in the given cell.
+     *
+     * @param cell index of the cell
+     * @return highest reading, or zero if the cell has no readings
+     * @throws IndexOutOfBoundsException if the cell is not kept
+     */
+    public int getMax(int cell) {
+        return this.max[position(cell)];
+    }
+
+    /**
+     * Returns the sum of the readings of each minute in the given cell.
+     *
+     * @param cell index of the cell
+     * @return sum of the readings
+     * @throws IndexOutOfBoundsException if the cell is not kept
+     */
+    public long getSum(int cell) {
+        return this.sum[position(cell)];
+    }
+
+    /**
+     * Returns the number of minutes with readings in the given cell.
+     *
+     * @param cell index of the cell
+     * @return number of minutes observed
+     * @throws IndexOutOfBoundsException if the cell is not kept
+     */
+    public int getCount(int cell) {
+        return this.count[position(cell)];
+    }
+
+    /**
+     * Returns the lowest reading in the cells overlapping the given range of
+     * minutes.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return lowest reading
+     * @throws IllegalArgumentException if no readings are kept for any
+     * minute of the cells overlapping the range
+     */
+    public int min(int from, int to) {
+        int result = Integer.MAX_VALUE;
+        for (int cell = firstCell(from, to); cell <= lastCell(to); cell++) {
+            int position = cell % this.count.length;
+            if (this.count[position] > 0) {
+                result = Math.min(result, this.min[position]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest reading in the cells overlapping the given range of
+     * minutes.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return highest reading
+     * @throws IllegalArgumentException if no readings are kept for any
+     * minute of the cells overlapping the range
+     */
+    public int max(int from, int to) {
+        int result = Integer.MIN_VALUE;
+        for (int cell = firstCell(from, to); cell <= lastCell(to); cell++) {
+            int position = cell % this.count.length;
+            if (this.count[position] > 0) {
+                result = Math.max(result, this.max[position]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the average reading per minute in the cells overlapping the
+     * given range of minutes.
+     *
+     * @param from first minute of the range
+     * @param to minute after the last minute of the range
+     * @return average reading
+     * @throws IllegalArgumentException if no readings are kept for any
+     * minute of the cells overlapping the range
+     */
+    public double average(int from, int to) {
+        long total = 0;
+        long minutes = 0;
+        for (int cell = firstCell(from, to); cell <= lastCell(to); cell++) {
+            int position = cell % this.count.length;
+            total += this.sum[position];
+            minutes += this.count[position];
+        }
+        return (double) total / minutes;
+    }
+
+    /**
+     * Returns the first kept cell overlapping the given range of minutes,
+     * checking that the range overlaps a cell with readings.
+     */
+    private int firstCell(int from, int to) {
+        if (from >= to) {
+            throw new IllegalArgumentException("Range of minutes from "
+                    + from + " to " + to + " is empty");
+        }
+        int start = Math.max(from / this.resolution, getOldestCell());
+        for (int cell = start; cell <= lastCell(to); cell++) {
+            if (this.count[cell % this.count.length] > 0) {
+                return start;
+            }
+        }
+        throw new IllegalArgumentException("Range of minutes from " + from
+                + " to " + to + " is not covered by the rollup");
+    }
+
+    /**
+     * Returns the last kept cell overlapping the range of minutes ending
+     * before the given minute.
+     */
+    private int lastCell(int to) {
+        return Math.min((to - 1) / this.resolution, this.newest);
+    }
+
+    /**
+     * Returns the position in the buffers of the given cell.
+     */
+    private int position(int cell) {
+        if (cell < getOldestCell() || cell > this.newest) {
+            throw new IndexOutOfBoundsException("Cell " + cell
+                    + " is not kept by the rollup");
+        }
+        return cell % this.count.length;
+    }
+}
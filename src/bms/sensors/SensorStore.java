@@ -0,0 +1,707 @@
+package bms.sensors;
+
+import bms.util.EventBus;
+import bms.util.TimedItemBatch;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar store holding the state of every {@link TimedSensor}.
+ * <p>
+ * Rather than each sensor keeping its own fields, the state of the sensor in
+ * each slot of the store is kept at that index of a set of primitive arrays,
+ * and the readings of all sensors are concatenated into one buffer. Elapsing
+ * a minute on many sensors is then a tight loop over a few arrays, rather
+ * than a virtual call on each sensor object.
+ * <p>
+ * The readings buffer is held off the heap, in a direct buffer, so however
+ * many readings the sensors have, they add nothing to the work of the
+ * garbage collector. Only a few ints per sensor are kept on the heap.
+ * <p>
+ * Identical series of readings, such as those of the sensors of floors
+ * created from the same template, are stored only once and shared by every
+ * sensor which has them. Since every sensor's readings are shared in this
+ * way, two sensors have equal readings exactly when they share a series.
+ * <p>
+ * A sensor's slot is freed once the sensor has been garbage collected, and
+ * may then be reused by a new sensor. Space in the readings buffer left by
+ * series no longer used by any sensor is reclaimed when the buffer fills up.
+ * <p>
+ * Sensors whose history is recorded also have a {@link SensorHistory} in
+ * their slot, which is updated whenever their current reading changes, and
+ * sensors with rollups have a {@link SensorRollup} at each resolution, which
+ * are updated every minute.
+ * <p>
+ * Changes of current reading are published on the {@link EventBus} as
+ * {@link SensorEvent}s while anything is subscribed to them.
+ */
+final class SensorStore implements TimedItemBatch {
+
+    /**
+     * Singleton instance.
+     */
+    private static final SensorStore INSTANCE = new SensorStore();
+
+    /**
+     * Initial number of slots and readings the store has room for.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Frees the slots of sensors which have been garbage collected.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Lock which must be held to read the readings buffer or elapse time,
+     * and held exclusively to allocate or free slots, which may move the
+     * readings.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Readings of all sensors, with each sensor's readings stored together,
+     * in a direct buffer.
+     */
+    private IntBuffer readings;
+
+    /**
+     * Length of the used part of the readings buffer, including readings of
+     * freed slots which have not been reclaimed.
+     */
+    private int readingsSize;
+
+    /**
+     * Number of readings in the buffer belonging to series which are no
+     * longer used.
+     */
+    private int freedReadings;
+
+    /**
+     * Series of readings in use, by the hash code of their readings.
+     */
+    private final Map<Integer, List<Series>> seriesByHash = new HashMap<>();
+
+    /**
+     * Series of readings of each slot, or null if the slot is free.
+     */
+    private Series[] series;
+
+    /**
+     * Position in the readings buffer of the first reading of each slot.
+     */
+    private int[] offsets;
+
+    /**
+     * Number of readings of each slot.
+     */
+    private int[] lengths;
+
+    /**
+     * Update frequency of each slot, in minutes.
+     */
+    private int[] frequencies;
+
+    /**
+     * Minutes elapsed by each slot.
+     */
+    private int[] timeElapsed;
+
+    /**
+     * Current reading of each slot.
+     */
+    private int[] currentReadings;
+
+    /**
+     * History of the readings of each slot, or null if the slot's history
+     * is not recorded.
+     */
+    private SensorHistory[] histories;
+
+    /**
+     * Rollups of the readings of each slot at each resolution, or null if
+     * the slot has no rollups.
+     */
+    private SensorRollup[][] rollups;
+
+    /**
+     * Sensor using each slot, so that events can name it, held weakly so
+     * that the store does not keep it alive.
+     */
+    private WeakReference<TimedSensor>[] sensors;
+
+    /**
+     * Number of slots which have been allocated, including freed slots.
+     */
+    private int slotCount;
+
+    /**
+     * Stack of freed slots which can be reused.
+     */
+    private int[] freeSlots;
+
+    /**
+     * Number of slots on the stack of freed slots.
+     */
+    private int freeSlotCount;
+
+    /**
+     * A series of readings stored in the readings buffer, shared by every
+     * sensor which has the same readings.
+     */
+    private static final class Series {
+        private int offset;
+        private final int length;
+        private final int hash;
+        private int references;
+
+        private Series(int offset, int length, int hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private SensorStore() {
+        this.readings = allocateReadings(INITIAL_CAPACITY);
+        this.offsets = new int[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.frequencies = new int[INITIAL_CAPACITY];
+        this.timeElapsed = new int[INITIAL_CAPACITY];
+        this.currentReadings = new int[INITIAL_CAPACITY];
+        this.freeSlots = new int[INITIAL_CAPACITY];
+        this.series = new Series[INITIAL_CAPACITY];
+        this.histories = new SensorHistory[INITIAL_CAPACITY];
+        this.rollups = new SensorRollup[INITIAL_CAPACITY][];
+        this.sensors = (WeakReference<TimedSensor>[])
+                new WeakReference<?>[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the singleton instance of the store.
+     *
+     * @return singleton instance
+     */
+    static SensorStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Allocates a slot for a new sensor, with the given readings and update
+     * frequency and no time elapsed, which is freed once the sensor has been
+     * garbage collected.
+     *
+     * The readings are copied into the store, unless an identical series is
+     * already stored, in which case the sensor shares it.
+     *
+     * @param sensor sensor which will use the slot
+     * @param sensorReadings readings of the sensor
+     * @param updateFrequency update frequency of the sensor, in minutes
+     * @return the sensor's slot
+     */
+    int allocate(TimedSensor sensor, int[] sensorReadings,
+            int updateFrequency) {
+        int slot;
+        this.lock.writeLock().lock();
+        try {
+            Series shared = intern(sensorReadings);
+            shared.references++;
+            if (this.freeSlotCount > 0) {
+                slot = this.freeSlots[--this.freeSlotCount];
+            } else {
+                if (this.slotCount == this.offsets.length) {
+                    growSlots();
+                }
+                slot = this.slotCount++;
+            }
+            this.series[slot] = shared;
+            this.offsets[slot] = shared.offset;
+            this.lengths[slot] = shared.length;
+            this.frequencies[slot] = updateFrequency;
+            this.timeElapsed[slot] = 0;
+            this.currentReadings[slot] = sensorReadings[0];
+            this.histories[slot] = null;
+            this.rollups[slot] = null;
+            this.sensors[slot] = new WeakReference<>(sensor);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        // The action must not refer to the sensor, or it would never be run
+        int freedSlot = slot;
+        CLEANER.register(sensor, () -> free(freedSlot));
+        return slot;
+    }
+
+    /**
+     * Returns the stored series with the given readings, storing them as a
+     * new series if there is none.
+     */
+    private Series intern(int[] sensorReadings) {
+        int hash = Arrays.hashCode(sensorReadings);
+        List<Series> candidates = this.seriesByHash.computeIfAbsent(hash,
+                key -> new ArrayList<>(1));
+        for (Series candidate : candidates) {
+            if (candidate.length == sensorReadings.length
+                    && this.readings.slice(candidate.offset, candidate.length)
+                    .equals(IntBuffer.wrap(sensorReadings))) {
+                return candidate;
+            }
+        }
+        // Made before the series is added, so compaction cannot discard it
+        ensureReadingsCapacity(sensorReadings.length);
+        this.readings.put(this.readingsSize, sensorReadings);
+        Series added = new Series(this.readingsSize, sensorReadings.length,
+                hash);
+        this.readingsSize += sensorReadings.length;
+        candidates.add(added);
+        return added;
+    }
+
+    /**
+     * Frees a slot, so that it can be reused, along with its readings if no
+     * other sensor shares them.
+     * <p>
+     * The slot's offset and length are left valid, since the timed item
+     * manager may elapse it once more before noticing that its sensor has
+     * been collected.
+     */
+    private void free(int slot) {
+        this.lock.writeLock().lock();
+        try {
+            Series freed = this.series[slot];
+            this.series[slot] = null;
+            this.histories[slot] = null;
+            this.rollups[slot] = null;
+            this.sensors[slot] = null;
+            if (--freed.references == 0) {
+                this.freedReadings += freed.length;
+                List<Series> candidates = this.seriesByHash.get(freed.hash);
+                candidates.remove(freed);
+                if (candidates.isEmpty()) {
+                    this.seriesByHash.remove(freed.hash);
+                }
+            }
+            this.freeSlots[this.freeSlotCount++] = slot;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Grows the arrays of slot state to hold twice as many slots.
+     */
+    private void growSlots() {
+        int capacity = this.offsets.length * 2;
+        this.offsets = Arrays.copyOf(this.offsets, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.frequencies = Arrays.copyOf(this.frequencies, capacity);
+        this.timeElapsed = Arrays.copyOf(this.timeElapsed, capacity);
+        this.currentReadings = Arrays.copyOf(this.currentReadings, capacity);
+        this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+        this.series = Arrays.copyOf(this.series, capacity);
+        this.histories = Arrays.copyOf(this.histories, capacity);
+        this.rollups = Arrays.copyOf(this.rollups, capacity);
+        this.sensors = Arrays.copyOf(this.sensors, capacity);
+    }
+
+    /**
+     * Makes room for the given number of readings at the end of the readings
+     * buffer, reclaiming the readings of freed slots if they take up at least
+     * half of the buffer, and growing it otherwise.
+     */
+    private void ensureReadingsCapacity(int extra) {
+        int capacity = this.readings.capacity();
+        if (this.readingsSize + extra <= capacity) {
+            return;
+        }
+        if (this.freedReadings >= this.readingsSize / 2) {
+            compactReadings();
+        }
+        if (this.readingsSize + extra > capacity) {
+            IntBuffer grown = allocateReadings(Math.max(capacity * 2,
+                    this.readingsSize + extra));
+            copyReadings(this.readings, 0, grown, 0, this.readingsSize);
+            this.readings = grown;
+        }
+    }
+
+    /**
+     * Copies the given range of readings from one buffer to another, through
+     * views of the buffers so that their positions are left unchanged.
+     */
+    private static void copyReadings(IntBuffer from, int fromOffset,
+            IntBuffer to, int toOffset, int length) {
+        IntBuffer source = from.duplicate();
+        source.position(fromOffset).limit(fromOffset + length);
+        IntBuffer target = to.duplicate();
+        target.position(toOffset);
+        target.put(source);
+    }
+
+    /**
+     * Allocates a direct buffer for the given number of readings.
+     */
+    private static IntBuffer allocateReadings(int capacity) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(capacity,
+                Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Moves the series in use together, discarding the readings of series
+     * which are no longer used.
+     */
+    private void compactReadings() {
+        IntBuffer compacted = allocateReadings(this.readings.capacity());
+        int size = 0;
+        for (List<Series> candidates : this.seriesByHash.values()) {
+            for (Series moved : candidates) {
+                copyReadings(this.readings, moved.offset, compacted, size,
+                        moved.length);
+                moved.offset = size;
+                size += moved.length;
+            }
+        }
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            if (this.series[slot] != null) {
+                this.offsets[slot] = this.series[slot].offset;
+            } else {
+                // Still a valid position, though its readings are gone
+                this.offsets[slot] = 0;
+                this.lengths[slot] = 1;
+            }
+        }
+        this.readings = compacted;
+        this.readingsSize = size;
+        this.freedReadings = 0;
+    }
+
+    /**
+     * Returns the current reading of the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     * @return current reading
+     */
+    int getCurrentReading(int slot) {
+        return this.currentReadings[slot];
+    }
+
+    /**
+     * Returns the minutes elapsed by the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     * @return minutes elapsed
+     */
+    int getTimeElapsed(int slot) {
+        return this.timeElapsed[slot];
+    }
+
+    /**
+     * Returns the update frequency of the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     * @return update frequency in minutes
+     */
+    int getUpdateFrequency(int slot) {
+        return this.frequencies[slot];
+    }
+
+    /**
+     * Returns the hash code of the readings of the sensor in the given slot,
+     * as calculated by {@link Arrays#hashCode(int[])}.
+     *
+     * @param slot sensor's slot
+     * @return hash code of the sensor's readings
+     */
+    int getReadingsHash(int slot) {
+        return this.series[slot].hash;
+    }
+
+    /**
+     * Returns whether the sensors in the given slots have equal readings.
+     *
+     * @param slot first sensor's slot
+     * @param other second sensor's slot
+     * @return true if the sensors' readings are equal
+     */
+    boolean hasSameReadings(int slot, int other) {
+        return this.series[slot] == this.series[other];
+    }
+
+    /**
+     * Returns a copy of the readings of the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     * @return new array containing the sensor's readings
+     */
+    int[] getReadings(int slot) {
+        this.lock.readLock().lock();
+        try {
+            int[] copy = new int[this.lengths[slot]];
+            this.readings.get(this.offsets[slot], copy);
+            return copy;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the reading of the sensor in the given slot at the given
+     * number of minutes after it was created.
+     *
+     * @param slot sensor's slot
+     * @param minute non-negative number of minutes
+     * @return reading at that minute
+     */
+    int readingAt(int slot, long minute) {
+        this.lock.readLock().lock();
+        try {
+            return reading(slot, minute);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the history of the readings of the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     * @return the sensor's history, or null if it is not recorded
+     */
+    SensorHistory getHistory(int slot) {
+        return this.histories[slot];
+    }
+
+    /**
+     * Starts recording a history of the given depth of the readings of the
+     * sensor in the given slot, starting with its current reading, or stops
+     * recording it if the depth is zero.
+     * <p>
+     * If a history was already being recorded, its most recent entries are
+     * kept, as many as fit in the new depth.
+     *
+     * @param slot sensor's slot
+     * @param depth maximum number of entries in the history, or zero
+     */
+    void setHistoryDepth(int slot, int depth) {
+        this.lock.writeLock().lock();
+        try {
+            SensorHistory previous = this.histories[slot];
+            if (depth == 0) {
+                this.histories[slot] = null;
+                return;
+            }
+            SensorHistory history = new SensorHistory(depth);
+            if (previous != null) {
+                previous.copyInto(history);
+            }
+            history.record(this.timeElapsed[slot],
+                    this.currentReadings[slot]);
+            this.histories[slot] = history;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rollups of the readings of the sensor in the given slot,
+     * from finest to coarsest resolution.
+     *
+     * @param slot sensor's slot
+     * @return the sensor's rollups, or null if it has none
+     */
+    SensorRollup[] getRollups(int slot) {
+        return this.rollups[slot];
+    }
+
+    /**
+     * Starts or stops keeping rollups of the readings of the sensor in the
+     * given slot. Rollups start with the current minute.
+     *
+     * @param slot sensor's slot
+     * @param enabled whether to keep rollups
+     */
+    void setRollupsEnabled(int slot, boolean enabled) {
+        this.lock.writeLock().lock();
+        try {
+            if (!enabled) {
+                this.rollups[slot] = null;
+            } else if (this.rollups[slot] == null) {
+                SensorRollup[] levels = SensorRollup.createLevels();
+                int time = this.timeElapsed[slot];
+                for (SensorRollup level : levels) {
+                    level.add(time, time + 1, this.currentReadings[slot]);
+                }
+                this.rollups[slot] = levels;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the minutes elapsed by the sensor in the given slot, and updates
+     * its current reading to match.
+     * <p>
+     * If the sensor's history is recorded and time moves forward, every
+     * reading the sensor would have observed in the meantime is recorded,
+     * except those which would already have been replaced by later entries.
+     * Likewise, its rollups are brought up to date.
+     *
+     * @param slot sensor's slot
+     * @param minutes non-negative number of minutes elapsed
+     */
+    void setTimeElapsed(int slot, int minutes) {
+        this.lock.readLock().lock();
+        try {
+            SensorHistory history = this.histories[slot];
+            if (history != null && minutes > this.timeElapsed[slot]) {
+                recordUpdates(slot, history, minutes);
+            }
+            SensorRollup[] levels = this.rollups[slot];
+            if (levels != null && minutes > this.timeElapsed[slot]) {
+                rollUp(slot, levels, minutes);
+            }
+            this.timeElapsed[slot] = minutes;
+            int reading = reading(slot, minutes);
+            if (reading != this.currentReadings[slot]) {
+                this.currentReadings[slot] = reading;
+                publishChange(slot, reading);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Elapses one minute on the sensor in the given slot.
+     *
+     * @param slot sensor's slot
+     */
+    void elapseOneMinute(int slot) {
+        setTimeElapsed(slot, this.timeElapsed[slot] + 1);
+    }
+
+    /**
+     * Elapses one minute on the sensors in each of the given slots.
+     * <p>
+     * The current reading of a sensor only changes when its time elapsed
+     * reaches a multiple of its update frequency, so the readings buffer is
+     * only read for those sensors.
+     *
+     * @param slots slots of the sensors
+     * @param from position in slots of the first sensor to elapse
+     * @param to position in slots after the last sensor to elapse
+     */
+    @Override
+    public void elapseOneMinute(int[] slots, int from, int to) {
+        this.lock.readLock().lock();
+        try {
+            int[] elapsed = this.timeElapsed;
+            int[] frequency = this.frequencies;
+            int[] current = this.currentReadings;
+            int[] offset = this.offsets;
+            int[] length = this.lengths;
+            SensorHistory[] history = this.histories;
+            SensorRollup[][] rollup = this.rollups;
+            IntBuffer buffer = this.readings;
+            boolean publishing = EventBus.getInstance()
+                    .hasSubscribers(SensorEvent.class);
+            for (int i = from; i < to; i++) {
+                int slot = slots[i];
+                int time = ++elapsed[slot];
+                int updates = time / frequency[slot];
+                if (updates * frequency[slot] == time) {
+                    int reading = buffer.get(offset[slot]
+                            + updates % length[slot]);
+                    if (publishing && reading != current[slot]) {
+                        publishChange(slot, reading);
+                    }
+                    current[slot] = reading;
+                    if (history[slot] != null) {
+                        history[slot].record(time, current[slot]);
+                    }
+                }
+                if (rollup[slot] != null) {
+                    for (SensorRollup level : rollup[slot]) {
+                        level.add(time, time + 1, current[slot]);
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records in the given history each update of the reading of the sensor
+     * in the given slot after its current time elapsed, up to the given
+     * minute, while holding the lock.
+     */
+    private void recordUpdates(int slot, SensorHistory history, int minutes) {
+        int frequency = this.frequencies[slot];
+        long first = this.timeElapsed[slot] / frequency + 1;
+        long last = minutes / frequency;
+        // The readings repeat after every cycle through them, so if any of
+        // them differ, the last depth changes occur within this many updates
+        long kept = (long) history.getDepth() * this.lengths[slot];
+        for (long update = Math.max(first, last - kept + 1); update <= last;
+                update++) {
+            int minute = (int) (update * frequency);
+            history.record(minute, reading(slot, minute));
+        }
+    }
+
+    /**
+     * Publishes a change of the current reading of the sensor in the given
+     * slot, if anything is subscribed to it and its sensor has not been
+     * collected.
+     */
+    private void publishChange(int slot, int reading) {
+        EventBus bus = EventBus.getInstance();
+        if (!bus.hasSubscribers(SensorEvent.class)) {
+            return;
+        }
+        WeakReference<TimedSensor> sensor = this.sensors[slot];
+        TimedSensor changed = sensor == null ? null : sensor.get();
+        if (changed != null) {
+            bus.publish(new SensorEvent(changed, reading));
+        }
+    }
+
+    /**
+     * Adds to the given rollups the readings of the sensor in the given slot
+     * for each minute after its current time elapsed, up to the given
+     * minute, while holding the lock.
+     */
+    private void rollUp(int slot, SensorRollup[] levels, int minutes) {
+        int[] readings = new int[this.lengths[slot]];
+        this.readings.get(this.offsets[slot], readings);
+        for (SensorRollup level : levels) {
+            level.add(this.timeElapsed[slot] + 1, minutes + 1, readings,
+                    this.frequencies[slot]);
+        }
+    }
+
+    /**
+     * Returns the reading of the sensor in the given slot at the given
+     * minute, while holding the lock.
+     */
+    private int reading(int slot, long minute) {
+        // Each reading is shown for a number of minutes equal to the update
+        // frequency, wrapping around at the end of the readings
+        int index = (int) ((minute / this.frequencies[slot])
+                % this.lengths[slot]);
+        return this.readings.get(this.offsets[slot] + index);
+    }
+}
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures ambient temperature in a room.
  * @ass1
@@ -70,9 +74,20 @@ public class TemperatureSensor extends TimedSensor implements HazardSensor, Comf
      */
     @Override
     public String encode() {
-        return String.format(
-                "TemperatureSensor:%s",
-                super.encode());
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes this sensor's record to the given output, in the format
+     * "TemperatureSensor:readings".
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("TemperatureSensor:");
+        super.encodeTo(out);
     }
 
     /**
@@ -1,9 +1,13 @@
 package bms.sensors;
 
+import bms.util.BatchedTimedItem;
 import bms.util.Encodable;
+import bms.util.FastForwardable;
 import bms.util.TimedItem;
+import bms.util.TimedItemBatch;
 import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Objects;
@@ -11,32 +15,18 @@ import java.util.Objects;
 /**
  * An abstract class to represent a sensor that iterates through observed values
  * on a timer.
+ * <p>
+ * The sensor's readings, update frequency, time elapsed and current reading
+ * are kept in a slot of the {@link SensorStore}, so that the timed item
+ * manager can elapse many sensors at once.
  */
-public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
+public abstract class TimedSensor implements FastForwardable,
+        BatchedTimedItem, Sensor, Encodable {
 
     /**
-     * Data array representing the readings observed by the sensor.
-     * <p>
-     * Readings taken one minute apart.
-     */
-    private int[] sensorReadings;
-
-    /**
-     * The current sensor reading observed by the sensor.
-     */
-    private int currentReading;
-
-    /**
-     * The amount of time in minutes that the sensor has been running
-     * (according to the system, not real life).
-     */
-    private int timeElapsed;
-
-    /**
-     * The number of minutes that must pass before the current sensor
-     * reading is updated.
+     * Slot in the sensor store holding the sensor's state.
      */
-    private int updateFrequency;
+    private final int slot;
 
     /**
      * Creates a new timed sensor, using the provided list of sensor readings.
@@ -79,10 +69,8 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
                         "All sensor readings must be non-negative");
             }
         }
-        this.sensorReadings = sensorReadings;
-        this.currentReading = sensorReadings[0];
-        this.updateFrequency = updateFrequency;
-        this.timeElapsed = 0;
+        this.slot = SensorStore.getInstance().allocate(this, sensorReadings,
+                updateFrequency);
         TimedItemManager.getInstance().registerTimedItem(this);
     }
 
@@ -93,7 +81,17 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getCurrentReading() {
-        return this.currentReading;
+        return SensorStore.getInstance().getCurrentReading(this.slot);
+    }
+
+    /**
+     * Returns a copy of the readings observed by the sensor, in the order
+     * they are cycled through.
+     *
+     * @return new array containing the sensor's readings
+     */
+    public int[] getSensorReadings() {
+        return SensorStore.getInstance().getReadings(this.slot);
     }
 
     /**
@@ -105,7 +103,7 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getTimeElapsed() {
-        return timeElapsed;
+        return SensorStore.getInstance().getTimeElapsed(this.slot);
     }
 
     /**
@@ -116,7 +114,7 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getUpdateFrequency() {
-        return updateFrequency;
+        return SensorStore.getInstance().getUpdateFrequency(this.slot);
     }
 
     /**
@@ -132,21 +130,198 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      * */
     public void elapseOneMinute() {
-        this.timeElapsed++;
+        SensorStore.getInstance().elapseOneMinute(this.slot);
+    }
+
+    /**
+     * Returns the sensor store, which holds the state of every timed sensor.
+     *
+     * @return the sensor store
+     */
+    @Override
+    public TimedItemBatch getBatch() {
+        return SensorStore.getInstance();
+    }
+
+    /**
+     * Returns the sensor's slot in the sensor store.
+     *
+     * @return the sensor's slot
+     */
+    @Override
+    public int getBatchIndex() {
+        return this.slot;
+    }
+
+    /**
+     * Moves the sensor forward by the given number of minutes at once.
+     * <p>
+     * Since the current reading depends only on the time elapsed, this has
+     * the same result as calling {@link #elapseOneMinute()} the given number
+     * of times, but takes constant time however many minutes are elapsed.
+     * If the sensor's history or rollups are being kept, they are brought up
+     * to date in time proportional to their size, which likewise does not
+     * depend on the number of minutes.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     * @throws ArithmeticException if the time elapsed would no longer fit in
+     * an int
+     */
+    @Override
+    public void advance(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Cannot advance by a negative number of minutes");
+        }
+        SensorStore.getInstance().setTimeElapsed(this.slot,
+                Math.toIntExact(getTimeElapsed() + minutes));
+    }
+
+    /**
+     * Returns the reading observed by the sensor at the given number of
+     * minutes after it was created, without changing its current reading.
+     * <p>
+     * {@code readingAt(getTimeElapsed())} is always equal to
+     * {@link #getCurrentReading()}.
+     *
+     * @param minute number of minutes since the sensor was created
+     * @return the sensor's reading at that time
+     * @throws IllegalArgumentException if minute is negative
+     */
+    public int readingAt(long minute) {
+        if (minute < 0) {
+            throw new IllegalArgumentException(
+                    "Minute must not be negative");
+        }
+        return SensorStore.getInstance().readingAt(this.slot, minute);
+    }
+
+    /**
+     * Starts recording the history of the sensor's readings, keeping at most
+     * the given number of changes of reading, or stops recording it if the
+     * depth is zero.
+     * <p>
+     * The history starts with the current reading. If the history was
+     * already being recorded, its most recent entries are kept, as many as
+     * fit in the new depth. Histories are not saved.
+     *
+     * @param depth maximum number of entries in the history, or zero
+     * @throws IllegalArgumentException if depth is negative
+     */
+    public void setHistoryDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException(
+                    "History depth must not be negative");
+        }
+        SensorStore.getInstance().setHistoryDepth(this.slot, depth);
+    }
+
+    /**
+     * Returns the history of the sensor's readings, with the minute of each
+     * entry given as the sensor's time elapsed.
+     *
+     * @return the sensor's history, or null if it is not being recorded
+     */
+    public SensorHistory getHistory() {
+        return SensorStore.getInstance().getHistory(this.slot);
+    }
 
-        // calculate the time taken before wrapping around to the starting value
-        // again
-        int rotationDuration = this.sensorReadings.length
-                * this.updateFrequency;
+    /**
+     * Returns the lowest reading observed by the sensor over the given
+     * number of minutes up to and including the current minute, or over as
+     * many of them as are covered by its history.
+     *
+     * @param minutes number of minutes, greater than zero
+     * @return lowest reading over the last minutes
+     * @throws IllegalArgumentException if minutes is not greater than zero
+     * @throws IllegalStateException if the history is not being recorded
+     */
+    public int getMinReading(int minutes) {
+        return recordedHistory().min(windowStart(minutes),
+                getTimeElapsed() + 1);
+    }
 
-        // calculate the time remaining in the current rotation
-        int timeRemainingInRotation =  this.timeElapsed % rotationDuration;
+    /**
+     * Returns the highest reading observed by the sensor over the given
+     * number of minutes up to and including the current minute, or over as
+     * many of them as are covered by its history.
+     *
+     * @param minutes number of minutes, greater than zero
+     * @return highest reading over the last minutes
+     * @throws IllegalArgumentException if minutes is not greater than zero
+     * @throws IllegalStateException if the history is not being recorded
+     */
+    public int getMaxReading(int minutes) {
+        return recordedHistory().max(windowStart(minutes),
+                getTimeElapsed() + 1);
+    }
 
-        // index is time remaining in the current rotation divided by the update
-        // frequency
-        int index = timeRemainingInRotation / this.updateFrequency;
+    /**
+     * Returns the average reading observed by the sensor over the given
+     * number of minutes up to and including the current minute, or over as
+     * many of them as are covered by its history.
+     *
+     * @param minutes number of minutes, greater than zero
+     * @return average reading per minute over the last minutes
+     * @throws IllegalArgumentException if minutes is not greater than zero
+     * @throws IllegalStateException if the history is not being recorded
+     */
+    public double getAverageReading(int minutes) {
+        return recordedHistory().average(windowStart(minutes),
+                getTimeElapsed() + 1);
+    }
 
-        this.currentReading = this.sensorReadings[index];
+    /**
+     * Starts or stops keeping rollups of the sensor's readings at each
+     * resolution of {@link SensorRollup}, starting with the current minute.
+     * Rollups are not saved.
+     *
+     * @param enabled whether to keep rollups
+     */
+    public void setRollupsEnabled(boolean enabled) {
+        SensorStore.getInstance().setRollupsEnabled(this.slot, enabled);
+    }
+
+    /**
+     * Returns the rollup of the sensor's readings at the given resolution,
+     * with its cells aligned to the sensor's time elapsed.
+     *
+     * @param resolution one of {@link SensorRollup#MINUTE},
+     *                   {@link SensorRollup#QUARTER_HOUR},
+     *                   {@link SensorRollup#HOUR} or {@link SensorRollup#DAY}
+     * @return the sensor's rollup, or null if it has no rollups
+     * @throws IllegalArgumentException if there is no rollup at the
+     * resolution
+     */
+    public SensorRollup getRollup(int resolution) {
+        int level = SensorRollup.levelOf(resolution);
+        SensorRollup[] levels = SensorStore.getInstance().getRollups(this.slot);
+        return levels == null ? null : levels[level];
+    }
+
+    /**
+     * Returns the sensor's history, which must be being recorded.
+     */
+    private SensorHistory recordedHistory() {
+        SensorHistory history = getHistory();
+        if (history == null) {
+            throw new IllegalStateException(
+                    "History of sensor is not being recorded");
+        }
+        return history;
+    }
+
+    /**
+     * Returns the first minute of the given number of minutes up to and
+     * including the current minute.
+     */
+    private int windowStart(int minutes) {
+        if (minutes <= 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must be greater than zero");
+        }
+        return (int) Math.max(0, getTimeElapsed() + 1L - minutes);
     }
 
     /**
@@ -181,8 +356,9 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      */
     @Override
     public int hashCode() {
-        int result = Objects.hash(updateFrequency);
-        result = 31 * result + Arrays.hashCode(sensorReadings);
+        int result = Objects.hash(getUpdateFrequency());
+        result = 31 * result
+                + SensorStore.getInstance().getReadingsHash(this.slot);
         return result;
     }
 
@@ -237,8 +413,9 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TimedSensor that = (TimedSensor) o;
-        return updateFrequency == that.updateFrequency &&
-                Arrays.equals(sensorReadings, that.sensorReadings);
+        return getUpdateFrequency() == that.getUpdateFrequency() &&
+                SensorStore.getInstance().hasSameReadings(this.slot,
+                        that.slot);
     }
 
     /**
@@ -258,8 +435,8 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
     @Override
     public String toString() {
         return String.format("TimedSensor: freq=%d, readings=%s",
-                this.updateFrequency,
-                String.join(",", Arrays.stream(this.sensorReadings)
+                getUpdateFrequency(),
+                String.join(",", Arrays.stream(getSensorReadings())
                         .mapToObj(String::valueOf)
                         .toArray(String[]::new)));
     }
@@ -271,8 +448,26 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      */
     @Override
     public String encode() {
-        return String.join(",", Arrays.stream(this.sensorReadings)
-                .mapToObj(String::valueOf)
-                .toArray(String[]::new));
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Writes this sensor's comma-separated readings to the given output.
+     * <p>
+     * Subclasses write their full sensor record, using this method to write
+     * the readings part of the record.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        int[] sensorReadings = getSensorReadings();
+        for (int i = 0; i < sensorReadings.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(String.valueOf(sensorReadings[i]));
+        }
     }
 }
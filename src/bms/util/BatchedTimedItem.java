@@ -0,0 +1,25 @@
+package bms.util;
+
+/**
+ * A timed item whose state is kept in a shared batch, along with that of
+ * many similar items.
+ * <p>
+ * When consecutive registered items belong to the same batch, the
+ * {@link TimedItemManager} elapses them all with a single call to the batch,
+ * rather than calling each item in turn.
+ */
+public interface BatchedTimedItem extends TimedItem {
+    /**
+     * Returns the batch which holds the item's state.
+     *
+     * @return the item's batch
+     */
+    TimedItemBatch getBatch();
+
+    /**
+     * Returns the index of the item within its batch.
+     *
+     * @return the item's index in its batch
+     */
+    int getBatchIndex();
+}
@@ -0,0 +1,21 @@
+package bms.util;
+
+import java.util.List;
+
+/**
+ * A timed item whose behaviour each minute depends on the state of other
+ * timed items.
+ * <p>
+ * Declaring these dependencies allows the
+ * {@link TimedItemManager} to fast-forward every other item in bulk, while
+ * still stepping this item and its dependencies minute by minute.
+ */
+public interface DependentTimedItem extends TimedItem {
+    /**
+     * Returns the timed items whose state this item reads when a minute
+     * elapses.
+     *
+     * @return list of timed items this item depends on
+     */
+    List<TimedItem> getDependencies();
+}
@@ -1,5 +1,8 @@
 package bms.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * A type that can be encoded to a machine-readable string representation, useful for saving objects to files.
  */
@@ -9,4 +12,42 @@ public interface Encodable {
      * @return encoded String representation
      */
     String encode();
-}
\ No newline at end of file
+
+    /**
+     * Writes the encoded representation of the current state of this object
+     * to the given output.
+     * <p>
+     * The characters written are the same as those returned by
+     * {@link Encodable#encode()}. By default, this method simply appends the
+     * result of {@code encode()}; types which encode large structures should
+     * override it to write their representation piece by piece, so that it
+     * never needs to be held in memory all at once.
+     *
+     * @param out output to write the encoded representation to
+     * @throws IOException if an IOException is encountered when writing
+     */
+    default void encodeTo(Appendable out) throws IOException {
+        out.append(encode());
+    }
+
+    /**
+     * Returns the encoded representation of the given object as a String, by
+     * writing it with {@link Encodable#encodeTo(Appendable)}.
+     * <p>
+     * Useful for implementing {@code encode()} in types which override
+     * {@code encodeTo(Appendable)}.
+     *
+     * @param encodable object to encode
+     * @return encoded String representation
+     */
+    static String encodeToString(Encodable encodable) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            encodable.encodeTo(builder);
+        } catch (IOException e) {
+            // Appending to a StringBuilder never throws an IOException
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+}
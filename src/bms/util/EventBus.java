@@ -0,0 +1,138 @@
+package bms.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Singleton bus on which the building model publishes its changes, so that
+ * views only need to update the parts of the model which changed.
+ * <p>
+ * Events may be published from any thread, including the threads of a
+ * parallel tick, and are queued until {@link #dispatch()} is called, which
+ * delivers them on the calling thread, in the order they were published.
+ * Subscribers to an event class are also given events of its subclasses.
+ * <p>
+ * Events are only queued while something is subscribed to them, so the model
+ * does no extra work when nothing is listening.
+ */
+public class EventBus {
+
+    /**
+     * Singleton instance.
+     */
+    private static EventBus instance = new EventBus();
+
+    /**
+     * Subscribers to each event class.
+     */
+    private final Map<Class<?>, List<Consumer<? super ModelEvent>>>
+            subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Events published but not yet dispatched.
+     */
+    private final Queue<ModelEvent> pending = new ConcurrentLinkedQueue<>();
+
+    private EventBus() {
+    }
+
+    /**
+     * Returns the singleton instance of the event bus.
+     *
+     * @return singleton instance
+     */
+    public static EventBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribes the given subscriber to events of the given class and its
+     * subclasses.
+     *
+     * @param type class of events to subscribe to
+     * @param subscriber subscriber to give the events to
+     * @param <E> type of events
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends ModelEvent> void subscribe(Class<E> type,
+            Consumer<? super E> subscriber) {
+        this.subscribers.computeIfAbsent(type,
+                key -> new CopyOnWriteArrayList<>())
+                .add((Consumer<? super ModelEvent>) subscriber);
+    }
+
+    /**
+     * Unsubscribes the given subscriber from events of the given class.
+     * Events already published are no longer given to it.
+     *
+     * @param type class of events subscribed to
+     * @param subscriber subscriber to remove
+     */
+    public void unsubscribe(Class<? extends ModelEvent> type,
+            Consumer<?> subscriber) {
+        List<Consumer<? super ModelEvent>> list = this.subscribers.get(type);
+        if (list != null) {
+            list.remove(subscriber);
+        }
+    }
+
+    /**
+     * Returns whether anything is subscribed to events of the given class.
+     * Publishers can check this to avoid creating events nobody will see.
+     *
+     * @param type class of events
+     * @return true if an event of the class would be delivered
+     */
+    public boolean hasSubscribers(Class<? extends ModelEvent> type) {
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            List<Consumer<? super ModelEvent>> list = this.subscribers.get(c);
+            if (list != null && !list.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publishes the given event, queuing it to be delivered by the next call
+     * to {@link #dispatch()} if anything is subscribed to it.
+     *
+     * @param event event to publish
+     */
+    public void publish(ModelEvent event) {
+        if (hasSubscribers(event.getClass())) {
+            this.pending.add(event);
+        }
+    }
+
+    /**
+     * Delivers the events published since the last dispatch to their
+     * subscribers, on the calling thread.
+     * <p>
+     * Events published while dispatching, including by subscribers, are
+     * left for the next dispatch.
+     */
+    public void dispatch() {
+        for (int i = this.pending.size(); i > 0; i--) {
+            ModelEvent event = this.pending.poll();
+            if (event == null) {
+                return;
+            }
+            for (Class<?> c = event.getClass(); c != Object.class;
+                    c = c.getSuperclass()) {
+                List<Consumer<? super ModelEvent>> list =
+                        this.subscribers.get(c);
+                if (list != null) {
+                    for (Consumer<? super ModelEvent> subscriber : list) {
+                        subscriber.accept(event);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package bms.util;
+
+/**
+ * A timed item whose state after any number of minutes can be calculated
+ * directly, without elapsing each minute in turn.
+ */
+public interface FastForwardable extends TimedItem {
+    /**
+     * Moves the item forward by the given number of minutes at once.
+     * <p>
+     * This must have the same result as calling {@code elapseOneMinute()}
+     * the given number of times.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    void advance(long minutes);
+}
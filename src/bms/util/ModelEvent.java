@@ -0,0 +1,34 @@
+package bms.util;
+
+/**
+ * A change to part of the building model, published on the
+ * {@link EventBus}.
+ * <p>
+ * Each kind of change has its own subclass, so subscribers can choose which
+ * kinds of change they are told about.
+ */
+public abstract class ModelEvent {
+
+    /**
+     * Part of the model which changed.
+     */
+    private final Object source;
+
+    /**
+     * Creates an event for a change to the given part of the model.
+     *
+     * @param source part of the model which changed
+     */
+    protected ModelEvent(Object source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the part of the model which changed.
+     *
+     * @return source of the event
+     */
+    public Object getSource() {
+        return this.source;
+    }
+}
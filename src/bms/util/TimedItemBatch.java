@@ -0,0 +1,20 @@
+package bms.util;
+
+/**
+ * A store holding the state of many {@link BatchedTimedItem}s, which can
+ * elapse a minute on many of them at once.
+ */
+public interface TimedItemBatch {
+    /**
+     * Elapses one minute on each of the items at the given indices in the
+     * batch, in order.
+     * <p>
+     * This must have the same result as calling {@code elapseOneMinute()} on
+     * each of the items.
+     *
+     * @param indices indices of items in the batch
+     * @param from position in indices of the first item to elapse
+     * @param to position in indices after the last item to elapse
+     */
+    void elapseOneMinute(int[] indices, int from, int to);
+}
@@ -1,7 +1,16 @@
 package bms.util;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Singleton class which manages all the timed items.
@@ -14,6 +23,20 @@ import java.util.List;
  * {@link TimedItemManager#registerTimedItem(TimedItem)} ()} and passing itself,
  * the manager will ensure that its {@code elapseOneMinute()} method is called
  * at regular intervals.
+ * <p>
+ * Given a pool with {@link TimedItemManager#setTickPool(ForkJoinPool)}, the
+ * manager elapses items in parallel, in shards which each hold whole groups
+ * of items which depend on each other.
+ * <p>
+ * Items which are no longer used, such as the sensors of a building which
+ * has been replaced, should be deregistered so that they are no longer
+ * elapsed and can be garbage collected. Alternatively, with
+ * {@link TimedItemManager#setWeakRegistration(boolean)}, the manager only
+ * holds items for as long as something else refers to them.
+ * <p>
+ * Consecutive registered items which are {@link BatchedTimedItem}s of the
+ * same batch, such as sensors created one after another, are elapsed with a
+ * single call to their batch.
  * @ass1
  */
 public class TimedItemManager implements TimedItem {
@@ -23,16 +46,103 @@ public class TimedItemManager implements TimedItem {
     private static TimedItemManager instance = new TimedItemManager();
 
     /**
-     * List of timed items currently registered with the manager.
+     * Registrations of the timed items currently registered with the
+     * manager, in registration order.
+     */
+    private List<Registration> registrations;
+
+    /**
+     * Number of minutes elapsed since the manager was created.
+     */
+    private long minutesElapsed;
+
+    /**
+     * Maximum number of items in a shard, unless a single group of items
+     * which depend on each other is larger.
+     */
+    private static final int SHARD_SIZE = 4096;
+
+    /**
+     * Pool on which shards are elapsed in parallel, or null if items are
+     * elapsed sequentially.
+     */
+    private ForkJoinPool tickPool;
+
+    /**
+     * Steps to carry out each minute for each shard of the registrations, or
+     * null if they must be recomputed. Without a tick pool, there is a
+     * single shard holding every registration.
+     */
+    private List<List<Step>> shards;
+
+    /**
+     * Queue to which the references of weakly held items are added once the
+     * items have been garbage collected.
      */
-    private List<TimedItem> timedItems;
+    private final ReferenceQueue<TimedItem> collected = new ReferenceQueue<>();
+
+    /**
+     * Whether newly registered items are held by weak references.
+     */
+    private boolean weakRegistration;
+
+    /**
+     * A registered timed item, held either strongly or by a weak reference.
+     */
+    private static final class Registration {
+        private final TimedItem item;
+        private final WeakReference<TimedItem> reference;
+
+        private Registration(TimedItem item, ReferenceQueue<TimedItem> queue) {
+            this.item = queue == null ? item : null;
+            this.reference = queue == null ? null
+                    : new WeakReference<>(item, queue);
+        }
+
+        /**
+         * Returns the registered item, or null if it was held weakly and has
+         * been garbage collected.
+         */
+        private TimedItem get() {
+            return this.reference == null ? this.item : this.reference.get();
+        }
+    }
+
+    /**
+     * A step in elapsing a minute on a shard: either a single registered
+     * item, or a run of consecutive registered items of the same batch.
+     */
+    private static final class Step {
+        private final Registration registration;
+        private final TimedItemBatch batch;
+        private final int[] indices;
+
+        private Step(Registration registration, TimedItemBatch batch,
+                int[] indices) {
+            this.registration = registration;
+            this.batch = batch;
+            this.indices = indices;
+        }
+
+        private void elapseOneMinute() {
+            if (this.batch != null) {
+                this.batch.elapseOneMinute(this.indices, 0,
+                        this.indices.length);
+            } else {
+                TimedItem timedItem = this.registration.get();
+                if (timedItem != null) {
+                    timedItem.elapseOneMinute();
+                }
+            }
+        }
+    }
 
     /**
      * Creates a new timed item manager with an empty list of registered items.
      * @ass1
      */
     private TimedItemManager() {
-        this.timedItems = new ArrayList<>();
+        this.registrations = new ArrayList<>();
     }
 
     /**
@@ -50,12 +160,104 @@ public class TimedItemManager implements TimedItem {
      * <p>
      * After calling this method, the manager will call the given timed item's
      * {@code elapseOneMinute()} method at regular intervals.
+     * <p>
+     * Timed items may be registered from any thread, such as when buildings
+     * are loaded in parallel.
      *
      * @param timedItem a timed item to register with the manager
      * @ass1
      */
-    public void registerTimedItem(TimedItem timedItem) {
-        this.timedItems.add(timedItem);
+    public synchronized void registerTimedItem(TimedItem timedItem) {
+        this.registrations.add(new Registration(timedItem,
+                this.weakRegistration ? this.collected : null));
+        this.shards = null;
+    }
+
+    /**
+     * Deregisters a timed item from the manager, so that its
+     * {@code elapseOneMinute()} method is no longer called.
+     * <p>
+     * Does nothing if the item is not registered.
+     *
+     * @param timedItem a timed item to deregister
+     */
+    public synchronized void deregisterTimedItem(TimedItem timedItem) {
+        deregisterTimedItems(List.of(timedItem));
+    }
+
+    /**
+     * Deregisters each of the given timed items from the manager.
+     * <p>
+     * This takes time proportional to the number of registered items, so
+     * deregistering many items at once, such as all of those in a building,
+     * is much faster than deregistering them one at a time. Items which are
+     * not registered are ignored.
+     *
+     * @param timedItems timed items to deregister
+     */
+    public synchronized void deregisterTimedItems(
+            Collection<? extends TimedItem> timedItems) {
+        Set<TimedItem> removed = Collections.newSetFromMap(
+                new IdentityHashMap<>());
+        removed.addAll(timedItems);
+        this.registrations.removeIf(registration -> {
+            TimedItem timedItem = registration.get();
+            return timedItem == null || removed.contains(timedItem);
+        });
+        this.shards = null;
+    }
+
+    /**
+     * Sets whether timed items registered from now on are held by weak
+     * references.
+     * <p>
+     * A weakly held item stays registered only for as long as it is reachable
+     * from elsewhere, such as a sensor from its room, so items which are
+     * discarded without being deregistered, for example those of a file
+     * which failed to load part way through, stop being elapsed once they are
+     * garbage collected. Items which nothing else refers to must not be
+     * registered weakly. By default, items are held strongly.
+     *
+     * @param weak true to hold newly registered items by weak references
+     */
+    public synchronized void setWeakRegistration(boolean weak) {
+        this.weakRegistration = weak;
+    }
+
+    /**
+     * Returns the number of timed items currently registered with the
+     * manager, including any weakly held items which have been garbage
+     * collected but not yet removed.
+     *
+     * @return number of registered items
+     */
+    public synchronized int getTimedItemCount() {
+        return this.registrations.size();
+    }
+
+    /**
+     * Sets the pool on which timed items are elapsed in parallel, or null to
+     * elapse them sequentially on the calling thread.
+     * <p>
+     * Items are split into shards of up to a few thousand items. Each
+     * {@link DependentTimedItem} is kept in the same shard as its
+     * dependencies, such as a maintenance schedule and the sensors of its
+     * rooms, and the items in a shard are elapsed in registration order, so
+     * every item sees the same state as in a sequential tick. If any item is
+     * neither {@link FastForwardable} nor a {@link DependentTimedItem}, its
+     * dependencies are unknown and all items are elapsed sequentially.
+     * <p>
+     * Shards are elapsed one minute at a time, and every shard finishes a
+     * minute before any shard starts the next. Shards are recomputed after
+     * an item is registered, so an item's dependencies should only change
+     * when a new item, such as a sensor added to a room, has just been
+     * registered.
+     *
+     * @param pool pool to elapse items on, or null
+     */
+    public synchronized void setTickPool(ForkJoinPool pool) {
+        this.tickPool = pool;
+        this.shards = null;
     }
 
     /**
@@ -63,9 +265,292 @@ public class TimedItemManager implements TimedItem {
      * @ass1
      */
     @Override
-    public void elapseOneMinute() {
-        for (TimedItem timedItem : this.timedItems) {
-            timedItem.elapseOneMinute();
+    public synchronized void elapseOneMinute() {
+        removeCollected();
+        if (this.shards == null) {
+            this.shards = plan(this.registrations);
+        }
+        elapse(this.shards, 1);
+        this.minutesElapsed++;
+    }
+
+    /**
+     * Returns the number of minutes which have elapsed since the manager was
+     * created, ie. the number of calls to {@code elapseOneMinute()}.
+     * <p>
+     * Items created part way through a simulation, such as the sensors of a
+     * building which is loaded lazily, can use this to catch up with the
+     * items which were registered at the start.
+     *
+     * @return number of minutes elapsed
+     */
+    public synchronized long getMinutesElapsed() {
+        return this.minutesElapsed;
+    }
+
+    /**
+     * Elapses the given number of minutes on every registered timed item, as
+     * quickly as possible.
+     * <p>
+     * This has the same result as calling {@code elapseOneMinute()} the given
+     * number of times. Items which are {@link FastForwardable} are advanced
+     * in a single step, unless another item depends on them. Items which are
+     * not fast-forwardable, and the items they declare as dependencies (see
+     * {@link DependentTimedItem}), are stepped minute by minute in
+     * registration order, as in a normal tick. If any item which must be
+     * stepped does not declare its dependencies, every item is stepped.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    public synchronized void fastForward(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Cannot fast-forward by a negative number of minutes");
+        }
+        if (minutes == 0) {
+            return;
+        }
+        removeCollected();
+        advance(this.registrations, minutes);
+        this.minutesElapsed += minutes;
+    }
+
+    /**
+     * Elapses the given number of minutes on the given timed items only, in
+     * the same way as {@link TimedItemManager#fastForward(long)} elapses them
+     * on every registered item, without changing the number of minutes
+     * elapsed.
+     * <p>
+     * Items created part way through a simulation, such as those of a
+     * building which is loaded lazily, can use this to catch up with the
+     * items which were registered at the start. The items should be given in
+     * registration order, along with every item they depend on, so that each
+     * item sees the same state at each minute as in a normal tick.
+     *
+     * @param timedItems timed items to elapse
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    public synchronized void fastForward(List<? extends TimedItem> timedItems,
+            long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Cannot fast-forward by a negative number of minutes");
+        }
+        List<Registration> itemRegistrations =
+                new ArrayList<>(timedItems.size());
+        for (TimedItem timedItem : timedItems) {
+            itemRegistrations.add(new Registration(timedItem, null));
+        }
+        advance(itemRegistrations, minutes);
+    }
+
+    /**
+     * Elapses the given number of minutes on the given registered items,
+     * advancing each fast-forwardable item in a single step unless another
+     * of the items depends on it, and stepping the rest minute by minute.
+     */
+    private void advance(List<Registration> itemRegistrations, long minutes) {
+        if (minutes == 0) {
+            return;
+        }
+        Set<TimedItem> dependencies = Collections.newSetFromMap(
+                new IdentityHashMap<>());
+        boolean unknownDependencies = false;
+        for (Registration registration : itemRegistrations) {
+            TimedItem timedItem = registration.get();
+            if (timedItem instanceof DependentTimedItem) {
+                dependencies.addAll(
+                        ((DependentTimedItem) timedItem).getDependencies());
+            } else if (timedItem != null
+                    && !(timedItem instanceof FastForwardable)) {
+                unknownDependencies = true;
+            }
+        }
+
+        List<Registration> steppedItems = new ArrayList<>();
+        for (Registration registration : itemRegistrations) {
+            TimedItem timedItem = registration.get();
+            if (timedItem instanceof FastForwardable && !unknownDependencies
+                    && !dependencies.contains(timedItem)) {
+                ((FastForwardable) timedItem).advance(minutes);
+            } else if (timedItem != null) {
+                steppedItems.add(registration);
+            }
+        }
+        elapse(plan(steppedItems), minutes);
+    }
+
+    /**
+     * Removes the registrations of weakly held items which have been garbage
+     * collected, if there are any.
+     */
+    private void removeCollected() {
+        if (this.collected.poll() == null) {
+            return;
+        }
+        while (this.collected.poll() != null) {
+            // Drain the queue, since all are removed at once
+        }
+        this.registrations.removeIf(
+                registration -> registration.get() == null);
+        this.shards = null;
+    }
+
+    /**
+     * Elapses the given number of minutes on each shard, in parallel on the
+     * tick pool, waiting for every shard to finish each minute before
+     * starting the next.
+     */
+    private void elapse(List<List<Step>> plans, long minutes) {
+        if (plans.size() == 1) {
+            for (long minute = 0; minute < minutes; minute++) {
+                for (Step step : plans.get(0)) {
+                    step.elapseOneMinute();
+                }
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(plans.size());
+        for (long minute = 0; minute < minutes; minute++) {
+            tasks.clear();
+            for (List<Step> plan : plans) {
+                tasks.add(this.tickPool.submit(() -> {
+                    for (Step step : plan) {
+                        step.elapseOneMinute();
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Splits the given registered items into shards, if there is a tick
+     * pool, and works out the steps to elapse a minute on each shard.
+     */
+    private List<List<Step>> plan(List<Registration> itemRegistrations) {
+        List<List<Registration>> itemShards = this.tickPool == null
+                ? List.of(itemRegistrations) : shard(itemRegistrations);
+        List<List<Step>> plans = new ArrayList<>(itemShards.size());
+        for (List<Registration> shard : itemShards) {
+            plans.add(steps(shard));
+        }
+        return plans;
+    }
+
+    /**
+     * Returns the steps to elapse a minute on the given registered items in
+     * order, combining consecutive items of the same batch into one step.
+     */
+    private static List<Step> steps(List<Registration> itemRegistrations) {
+        List<Step> steps = new ArrayList<>();
+        int i = 0;
+        while (i < itemRegistrations.size()) {
+            TimedItem timedItem = itemRegistrations.get(i).get();
+            if (!(timedItem instanceof BatchedTimedItem)) {
+                if (timedItem != null) {
+                    steps.add(new Step(itemRegistrations.get(i), null, null));
+                }
+                i++;
+                continue;
+            }
+            TimedItemBatch batch = ((BatchedTimedItem) timedItem).getBatch();
+            int[] indices = new int[16];
+            int count = 0;
+            while (timedItem instanceof BatchedTimedItem
+                    && ((BatchedTimedItem) timedItem).getBatch() == batch) {
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, count * 2);
+                }
+                indices[count++] =
+                        ((BatchedTimedItem) timedItem).getBatchIndex();
+                i++;
+                timedItem = i < itemRegistrations.size()
+                        ? itemRegistrations.get(i).get() : null;
+            }
+            steps.add(new Step(null, batch, Arrays.copyOf(indices, count)));
+        }
+        return steps;
+    }
+
+    /**
+     * Splits the given registered items into shards which can be elapsed in
+     * parallel.
+     * <p>
+     * Items which are linked by declared dependencies form a group which is
+     * never split between shards, and keeps its registration order. Groups
+     * are packed into shards in order of their first item.
+     */
+    private static List<List<Registration>> shard(
+            List<Registration> itemRegistrations) {
+        int[] parent = new int[itemRegistrations.size()];
+        IdentityHashMap<TimedItem, Integer> indices = new IdentityHashMap<>();
+        List<TimedItem> items = new ArrayList<>(itemRegistrations.size());
+        for (int i = 0; i < itemRegistrations.size(); i++) {
+            TimedItem timedItem = itemRegistrations.get(i).get();
+            if (timedItem != null && !(timedItem instanceof FastForwardable)
+                    && !(timedItem instanceof DependentTimedItem)) {
+                return List.of(itemRegistrations);
+            }
+            parent[i] = i;
+            if (timedItem != null) {
+                indices.put(timedItem, i);
+            }
+            items.add(timedItem);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) instanceof DependentTimedItem) {
+                for (TimedItem dependency
+                        : ((DependentTimedItem) items.get(i)).getDependencies()) {
+                    // Items which are not in the list are never elapsed
+                    Integer j = indices.get(dependency);
+                    if (j != null) {
+                        parent[root(parent, i)] = root(parent, j);
+                    }
+                }
+            }
+        }
+
+        List<List<Registration>> groups = new ArrayList<>();
+        int[] groupOfRoot = new int[items.size()];
+        Arrays.fill(groupOfRoot, -1);
+        for (int i = 0; i < items.size(); i++) {
+            int root = root(parent, i);
+            if (groupOfRoot[root] < 0) {
+                groupOfRoot[root] = groups.size();
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groupOfRoot[root]).add(itemRegistrations.get(i));
+        }
+
+        List<List<Registration>> result = new ArrayList<>();
+        List<Registration> current = new ArrayList<>();
+        for (List<Registration> group : groups) {
+            current.addAll(group);
+            if (current.size() >= SHARD_SIZE) {
+                result.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty() || result.isEmpty()) {
+            result.add(current);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the root of the given item's group, compressing the path to
+     * it.
+     */
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
         }
+        return i;
     }
 }